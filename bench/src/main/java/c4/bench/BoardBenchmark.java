@@ -0,0 +1,165 @@
+package c4.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import c4.model.Board;
+import c4.model.Player;
+
+/** Benchmarks of the hot paths of {@link Board}. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    /** Slots filling a board bottom up, one row at a time. */
+    private static final int[] FILL = new int[42];
+
+    static {
+        for (int i = 0; i < FILL.length; i++) {
+            FILL[i] = i % 7;
+        }
+    }
+
+    /** Players of the boards. */
+    private final Player red = new Player("Red");
+    private final Player blue = new Player("Blue");
+
+    /** Board changed by a benchmark. */
+    private Board board;
+
+    /** Midgame board without a winning row. */
+    private Board midgame;
+
+    /** 9x7 board, taking more than 64 bits, changed by a benchmark. */
+    private Board wide;
+
+    /** Boards with a synchronous, a batched and an asynchronous listener. */
+    private Board synced, batched, async;
+
+    /** Number of drops seen by the listeners. */
+    private volatile long drops;
+
+    /** State of the xorshift generator of random playouts. */
+    private long seed = 88172645463325252L;
+
+    @Setup
+    public void setUp() {
+        board = new Board();
+        midgame = new Board();
+        wide = new Board(9, 7, 4);
+        synced = new Board();
+        synced.events().subscribe((slot, y, player) -> drops++);
+        batched = new Board();
+        batched.events().subscribeBatched(
+                (count, slots, ys, players) -> drops += count, 64);
+        async = new Board();
+        async.events().subscribeAsync((slot, y, player) -> drops++, 1024);
+        String moves = "44444362335";
+        Player player = red;
+        for (int i = 0; i < moves.length(); i++) {
+            midgame.dropInSlot(moves.charAt(i) - '1', player);
+            player = player == red ? blue : red;
+        }
+    }
+
+    /** Drop checkers of alternating players until the board is full. */
+    @Benchmark
+    public int dropInSlot() {
+        return fill(board);
+    }
+
+    /** Drop checkers notifying a synchronous listener of each. */
+    @Benchmark
+    public int dropInSlotSync() {
+        return fill(synced);
+    }
+
+    /** Drop checkers notifying a listener in batches. */
+    @Benchmark
+    public int dropInSlotBatched() {
+        return fill(batched);
+    }
+
+    /** Drop checkers notifying a listener on another thread. */
+    @Benchmark
+    public int dropInSlotAsync() {
+        return fill(async);
+    }
+
+    /** Drop checkers of alternating players on the given board, after
+     * clearing it, until it is full. */
+    private int fill(Board board) {
+        board.clear();
+        int sum = 0;
+        for (int i = 0; i < FILL.length; i++) {
+            sum += board.dropInSlot(FILL[i], (i & 1) == 0 ? red : blue);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public boolean isWonBy() {
+        return midgame.isWonBy(red) | midgame.isWonBy(blue);
+    }
+
+    @Benchmark
+    public boolean lastMoveWins() {
+        return midgame.lastMoveWins(4, 4);
+    }
+
+    @Benchmark
+    public boolean isFull() {
+        return midgame.isFull();
+    }
+
+    @Benchmark
+    public Board clear() {
+        board.clear();
+        return board;
+    }
+
+    /** Play random moves from the empty board until the game ends. */
+    @Benchmark
+    public int randomPlayout() {
+        return randomPlayout(board);
+    }
+
+    /** Play random moves from the empty 9x7 board until the game ends. */
+    @Benchmark
+    public int randomPlayoutWide() {
+        return randomPlayout(wide);
+    }
+
+    /** Play random moves from the empty given board until the game ends. */
+    private int randomPlayout(Board board) {
+        board.clear();
+        int n = board.numOfSlots();
+        while (true) {
+            int slot;
+            do {
+                seed ^= seed << 13;
+                seed ^= seed >>> 7;
+                seed ^= seed << 17;
+                slot = (int) ((seed >>> 33) % n);
+            } while (!board.isSlotOpen(slot));
+            int y = board.play(slot);
+            if (board.lastMoveWins(slot, y) || board.isFull()) {
+                return board.numOfMoves();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package c4.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import c4.model.Board;
+import c4.search.AlphaBeta;
+import c4.search.SmpScaling;
+import c4.search.TranspositionTable;
+
+/**
+ * Benchmark of a fixed-depth alpha-beta search over the standard
+ * position suite of {@link SmpScaling}. An operation searches every
+ * position of the suite, each starting with an empty table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"4", "6", "8", "10"})
+    private int depth;
+
+    /** Cache of the search; small enough to clear cheaply. */
+    private final TranspositionTable table = new TranspositionTable(1);
+
+    /** Search to measure. */
+    private final AlphaBeta search = new AlphaBeta(table);
+
+    /** Positions of the suite. */
+    private Board[] positions;
+
+    @Setup
+    public void setUp() {
+        positions = new Board[SmpScaling.POSITIONS.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new Board();
+            positions[i].play(SmpScaling.POSITIONS[i]);
+        }
+    }
+
+    @Benchmark
+    public int searchSuite() {
+        int sum = 0;
+        for (Board board: positions) {
+            table.clear();
+            sum += search.bestMove(board, depth);
+        }
+        return sum;
+    }
+}
@@ -1,14 +0,0 @@
-package c4.base;
-
-import java.awt.Color;
-
-public class Ai extends ColorPlayer{
-
-	public Ai() {
-		super("Bot", Color.RED);
-		// TODO Auto-generated constructor stub
-	}
-	initGame();
-	
-
-}
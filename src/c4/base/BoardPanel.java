@@ -2,16 +2,34 @@ package c4.base;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
 
 import javax.swing.*;
 
 import c4.model.Board;
 import c4.model.Board.Place;
+import c4.model.BoardSnapshot;
+import c4.model.BoardEvents;
+import c4.model.Player;
+import c4.search.Analysis;
 
 /**
  * A special panel class to display a connect-four grid modeled by the
  * {@link c4.model.Board} class.
  * 
+ * The grid is drawn once into an image, and the placed checkers are
+ * drawn over a copy of it, a back buffer, as they are dropped. When a
+ * checker is dropped, only its slot is redrawn into the back buffer
+ * and repainted, so a game played at hundreds of moves per second
+ * costs little painting. The back buffer is drawn anew when the board
+ * is changed without notifying its listeners, e.g., cleared.
+ * 
+ * If given an {@link Analysis}, the panel shows the score of each open
+ * slot above its droppable checker as the analysis refines it in the
+ * background. The scores are polled a few times a second, so the
+ * event dispatch thread never waits for the analysis.
+ * 
  * @see c4.model.Board
  * @author Yoonsik Cheon
  */
@@ -53,6 +71,17 @@ public class BoardPanel extends JPanel {
     /** Color to highlight the checkers (discs) of the winning row. */
     private final Color winColor = Color.WHITE;
     
+    /** Colors of the scores of winning, losing and other slots. */
+    private final Color scoreWinColor = new Color(0, 128, 0);
+    private final Color scoreLossColor = new Color(192, 0, 0);
+    private final Color scoreColor = Color.DARK_GRAY;
+    
+    /** Height of the row of slot scores in pixels. */
+    private static final int SCORE_HEIGHT = 14;
+    
+    /** Time between two polls of the scores in milliseconds. */
+    private static final int SCORE_POLL_MILLIS = 100;
+    
     /** The listener observing this board panel. */
     private BoardClickListener listener;
 
@@ -74,6 +103,39 @@ public class BoardPanel extends JPanel {
     /** Index of the slot currently being pressed. */
     private int slotPressed = NO_SLOT;
     
+    /** Image of the empty grid, along with the row of empty places
+     * above it; null until first painted. */
+    private BufferedImage gridImage;
+    
+    /** Image of the grid and the checkers placed on it; null until
+     * first painted. */
+    private BufferedImage backBuffer;
+    
+    /** Number of moves of the board drawn in the back buffer. */
+    private int movesDrawn;
+    
+    /** Slots changed since the back buffer was last drawn, and the
+     * number of checkers dropped in them; guarded by this set. */
+    private final BitSet dirtySlots = new BitSet();
+    private int drops;
+    
+    /** Analysis whose scores are shown; null if none. */
+    private Analysis analysis;
+    
+    /** Subscription of the analysis to the changes of the board. */
+    private BoardEvents.Subscription analysisWatch;
+    
+    /** Result of the analysis last shown; null if none. */
+    private Analysis.Result shownResult;
+    
+    /** Timer polling the analysis for new scores. */
+    private final Timer scorePoller = new Timer(SCORE_POLL_MILLIS, 
+            e -> pollAnalysis());
+    
+    /** Height of the row of slot scores above the droppable checkers;
+     * 0 if no scores are shown. */
+    private volatile int top;
+    
     /** Create a new board panel to display the given board of
      * the given game. */
     public BoardPanel(final Board board, Game game) {
@@ -82,6 +144,82 @@ public class BoardPanel extends JPanel {
         slotHeight = board.slotHeight();
         numOfSlots = board.numOfSlots();
         addMouseListener(mouseAdapter);
+        board.events().subscribe(this::checkerDropped);
+    }
+    
+    /** Called, possibly on a thread other than the event dispatch
+     * thread, when a checker is dropped on the board. */
+    private void checkerDropped(int slot, int y, Player player) {
+        synchronized (dirtySlots) {
+            dirtySlots.set(slot);
+            drops++;
+        }
+        int top = this.top;
+        repaint(slot * placeSize, 0, placeSize, 
+                top + placeSize * (slotHeight + 1));
+        if (top > 0) {
+            repaint(0, 0, placeSize * numOfSlots, top); // scores go stale
+        }
+    }
+    
+    /**
+     * Show the scores of the open slots computed by the given analysis,
+     * which is made to analyze the board whenever it changes; null to
+     * stop showing scores. The previous analysis, if any, is no longer 
+     * given positions but isn't closed.
+     */
+    public void setAnalysis(Analysis analysis) {
+        if (analysisWatch != null) {
+            analysisWatch.cancel();
+            analysisWatch = null;
+        }
+        this.analysis = analysis;
+        shownResult = null;
+        if (analysis != null) {
+            analysisWatch = analysis.watch(board);
+            top = SCORE_HEIGHT;
+            scorePoller.start();
+        } else {
+            top = 0;
+            scorePoller.stop();
+        }
+        revalidate();
+        repaint();
+    }
+    
+    /** Repaint the scores if the analysis has new ones. The board is
+     * also given to the analysis in case it was changed without
+     * notifying the listeners, e.g., by taking back moves. */
+    private void pollAnalysis() {
+        if (analysis == null) {
+            return;
+        }
+        Analysis.Result result = analysis.result();
+        if (result == null || !result.matches(board.snapshot())) {
+            analysis.analyze(board);
+        }
+        if (result != shownResult) {
+            repaint(0, 0, placeSize * numOfSlots, top);
+        }
+    }
+    
+    /**
+     * Repaint the parts of this panel showing the status of the game
+     * rather than the board: the droppable checkers, whose color tells
+     * the turn, or, if the game is over, the whole grid to highlight
+     * the winning row and remove the droppable checkers.
+     */
+    public void repaintStatus() {
+        if (game.isGameOver()) {
+            repaint();
+        } else {
+            repaint(0, top, placeSize * numOfSlots, placeSize);
+        }
+    }
+    
+    /** Repaint the droppable checker of the given slot. */
+    private void repaintDroppable(int slot) {
+        repaint(slot * placeSize, top, placeSize, placeSize);
     }
     
     /** Register the given listener to be notified for board 
@@ -95,25 +233,25 @@ public class BoardPanel extends JPanel {
     private final MouseAdapter mouseAdapter = new MouseAdapter() {
         public void mousePressed(MouseEvent e) {
             if (!game.isGameOver()) {
-                int slot = locateSlot(e.getX(), e.getY());
-                if (slot >= 0 && board.isSlotOpen(slot)) {
+                int slot = locateSlot(e.getX(), e.getY() - top);
+                if (slot >= 0 && board.snapshot().isSlotOpen(slot)) {
                     slotPressed = slot;
-                    repaint();
+                    repaintDroppable(slot);
                 }
             }
         }
         
         public void mouseReleased(MouseEvent e) {
-            if (!game.isGameOver()) {
+            if (!game.isGameOver() && slotPressed != NO_SLOT) {
+                repaintDroppable(slotPressed);
                 slotPressed = NO_SLOT;
-                repaint();                    
             }                
         }
         
         public void mouseClicked(MouseEvent e) {
             if (!game.isGameOver()) {
-                int slot = locateSlot(e.getX(), e.getY());
-                if (slot >= 0 && board.isSlotOpen(slot)) {
+                int slot = locateSlot(e.getX(), e.getY() - top);
+                if (slot >= 0 && board.snapshot().isSlotOpen(slot)) {
                     // report a slot clicking event
                     listener.slotClicked(slot);
                 }
@@ -138,14 +276,119 @@ public class BoardPanel extends JPanel {
         return NO_SLOT;
     }
          
+    /** Return the size of the grid along with the row of droppable 
+     * checkers above it and the row of scores, if shown. */
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(placeSize * numOfSlots, 
+                top + placeSize * (slotHeight + 1));
+    }
+         
     /** Overridden here to draw the board along with checkers
-     *  (discs) dropped. */
+     *  (discs) dropped, copying the changed slots from the back buffer
+     *  and drawing the droppable checkers and the winning row over it.
+     *  All is drawn from a single snapshot of the board, so the board
+     *  may be changed on another thread meanwhile. */
     @Override
-    public void paint(Graphics g) {
-        super.paint(g); // clear the background
-        drawGrid(g);
-        drawDroppableCheckers(g);
-        drawPlacedCheckers(g);
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g); // clear the background
+        BoardSnapshot position = board.snapshot();
+        updateBackBuffer(position);
+        Rectangle clip = g.getClipBounds();
+        int from = 0;
+        int to = numOfSlots;
+        if (clip != null) {
+            from = Math.max(clip.x / placeSize, 0);
+            to = Math.min((clip.x + clip.width - 1) / placeSize + 1, 
+                    numOfSlots);
+        }
+        int top = this.top;
+        if (top > 0) {
+            drawScores(g, position, from, to);
+        }
+        g.translate(0, top);
+        g.drawImage(backBuffer, 0, 0, null);
+        drawDroppableCheckers(g, position, from, to);
+        drawWinningRow(g, position);
+        g.translate(0, -top);
+    }
+    
+    /** Draw the scores of the given slots, from inclusive to exclusive,
+     * of the latest result of the analysis if it is of the given
+     * position. */
+    private void drawScores(Graphics g, BoardSnapshot position, int from, 
+            int to) {
+        Analysis.Result result = analysis.result();
+        shownResult = result;
+        if (result == null || !result.matches(position)) {
+            return;
+        }
+        g.setFont(g.getFont().deriveFont(Font.PLAIN, SCORE_HEIGHT - 3));
+        FontMetrics metrics = g.getFontMetrics();
+        for (int i = from; i < to; i++) {
+            String label = result.label(i, position);
+            if (label != null) {
+                g.setColor(label.startsWith("W") ? scoreWinColor 
+                        : (label.startsWith("L") ? scoreLossColor 
+                                : scoreColor));
+                g.drawString(label, i * placeSize 
+                        + (placeSize - metrics.stringWidth(label)) / 2,
+                        SCORE_HEIGHT - 3);
+            }
+        }
+    }
+
+    /** 
+     * Bring the back buffer up to date with the given position of the
+     * board, redrawing the slots changed since it was last drawn or, if
+     * the board was changed without notifying the listeners, all the
+     * slots.
+     */
+    private void updateBackBuffer(BoardSnapshot position) {
+        if (backBuffer == null) {
+            gridImage = newBufferImage();
+            drawGrid(gridImage.getGraphics());
+            backBuffer = newBufferImage();
+            movesDrawn = -1;
+        }
+        BitSet slots;
+        int dropped;
+        synchronized (dirtySlots) {
+            slots = (BitSet) dirtySlots.clone();
+            dropped = drops;
+            dirtySlots.clear();
+            drops = 0;
+        }
+        int moves = position.numOfMoves();
+        if (moves != movesDrawn + dropped) {
+            slots.set(0, numOfSlots);
+        }
+        movesDrawn = moves;
+        if (slots.isEmpty()) {
+            return;
+        }
+        Graphics2D g = backBuffer.createGraphics();
+        try {
+            for (int i = slots.nextSetBit(0); i >= 0; 
+                    i = slots.nextSetBit(i + 1)) {
+                drawSlot(g, position, i);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+    
+    /** Create a transparent image of the size of the grid along with
+     * the row of droppable checkers above it. */
+    private BufferedImage newBufferImage() {
+        int width = placeSize * numOfSlots;
+        int height = placeSize * (slotHeight + 1);
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        return gc != null 
+                ? gc.createCompatibleImage(width, height, 
+                        Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, 
+                        BufferedImage.TYPE_INT_ARGB);
     }
 
     /** Draw the board grid. */ 
@@ -158,16 +401,37 @@ public class BoardPanel extends JPanel {
                 drawChecker(g, placeColor, i, j - 1);
             }
         }
+        g.dispose();
     }
     
-    /** Draw the current player's drop-able checkers above the grid.
-     * A user clicks these checkers to drop them into the corresponding
-     * slots. */
-    private void drawDroppableCheckers(Graphics g) {
+    /** Draw the given slot of the grid, along with its checkers in
+     * the given position, into the back buffer by using the given 
+     * graphics. */
+    private void drawSlot(Graphics2D g, BoardSnapshot position, int slot) {
+        int x = slot * placeSize;
+        int height = placeSize * (slotHeight + 1);
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(gridImage, x, 0, x + placeSize, height, 
+                x, 0, x + placeSize, height, null);
+        g.setComposite(AlphaComposite.SrcOver);
+        for (int j = 0; j < slotHeight; j++) {
+            ColorPlayer player = (ColorPlayer) position.playerAt(slot, j);
+            if (player != null) {
+                drawChecker(g, player.color(), slot, j);
+            }
+        }
+    }
+    
+    /** Draw the current player's drop-able checkers above the grid
+     * in the given slots, from inclusive to exclusive, that are open in
+     * the given position. A user clicks these checkers to drop them 
+     * into the corresponding slots. */
+    private void drawDroppableCheckers(Graphics g, BoardSnapshot position,
+            int from, int to) {
         if (!game.isGameOver()) {
             Color color = game.currentPlayer().color();
-            for (int i = 0; i < numOfSlots; i++) {
-                if (board.isSlotOpen(i)) {
+            for (int i = from; i < to; i++) {
+                if (position.isSlotOpen(i)) {
                     int margin = 2;
                     if (slotPressed == i) {
                         // animate a pressed checker
@@ -179,25 +443,12 @@ public class BoardPanel extends JPanel {
         }
     }
     
-    /** 
-     * Draw checkers dropped (placed) in the grid. 
-     * Checkers are displayed as filled circles. 
-     * The last dropped checker, if exists, is highlighted.
-     * If there is a winning row, their checkers are highlighted.
-     */
-    private void drawPlacedCheckers(Graphics g) {
-        for (int i = 0; i < numOfSlots; i++) {
-            for (int j = 0; j < slotHeight; j++) {
-                ColorPlayer player = (ColorPlayer) board.playerAt(i, j);
-                if (player != null) {
-                    drawChecker(g, player.color(), i, j);
-                }
-            }
-        }
-        
-        if (board.hasWinningRow()) {
-            for (Place p: board.winningRow()) {
-                ColorPlayer player = (ColorPlayer) board.playerAt(p.x, p.y);
+    /** If the given position has a winning row, highlight its checkers. */
+    private void drawWinningRow(Graphics g, BoardSnapshot position) {
+        if (position.hasWinningRow()) {
+            for (Place p: position.winningRow()) {
+                ColorPlayer player = 
+                        (ColorPlayer) position.playerAt(p.x, p.y);
                 drawChecker(g, player.color(), p.x, p.y, true);
             }
         }
@@ -6,34 +6,53 @@ import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JSlider;
 
+import c4.engine.GameLog;
+import c4.engine.GameRecord;
 import c4.model.Board;
+import c4.search.Analysis;
 
-/** The main game class including the UI and the control. */
+/** 
+ * The main game class providing the UI of a game. The game itself,
+ * including the turn and the detection of a win or a draw, is 
+ * played by {@link c4.engine.Game}.
+ */
 @SuppressWarnings("serial")
 public class C4Dialog extends JDialog implements BoardPanel.Game {
 	
+    /** Smallest size of the dialog; that of a standard board. */
     private final static Dimension DIMENSION = new Dimension(265, 340);
     
     /** The game board. */
     private Board board;
     
-    /** True if a game is not in progress; false otherwise. */
-    private boolean isGameOver;
-    
     /** Two players of the game. */
     private ColorPlayer[] players;
     
-    /** The player who has the turn. */
-    private ColorPlayer currentPlayer;
+    /** The game being played; its nested namesake is BoardPanel.Game. */
+    private c4.engine.Game game;
+
+    /** Log recording the games played; null if none. */
+    private GameLog gameLog;
+
+    /** Replay of recorded games; null if games are played. */
+    private Replay replay;
 
     /** To display the game board. */
     private BoardPanel boardPanel;
@@ -41,24 +60,73 @@ public class C4Dialog extends JDialog implements BoardPanel.Game {
     /** To start a new game. */
     private final JButton playButton = new JButton("Play");
 
+    /** To show or hide the scores of the open slots. */
+    private final JCheckBox analysisBox = new JCheckBox("Analysis");
+
+    /** Analysis of the board whose scores are shown; null if none. */
+    private Analysis analysis;
+
     /** Message bar to display various messages. */
     private JLabel msgBar = new JLabel();
     
+    /** Speeds of a replay in moves per second, as chosen from the 
+     * speed box; the last one is unthrottled. */
+    private static final int[] REPLAY_SPEEDS = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, Replay.UNTHROTTLED};
+    
+    /** To choose the speed of a replay. */
+    private final JComboBox<String> speedBox = new JComboBox<>();
+    
+    /** To rewind or fast-forward a replayed game to a move. */
+    private final JSlider plySlider = new JSlider(0, 0);
+    
+    /** Create a new dialog to play on a standard board. */
     public C4Dialog() {
+        this(new Board());
+    }
+    
+    /** Create a new dialog to play on the given board, sized to fit. */
+    public C4Dialog(Board board) {
         super((JFrame) null, "Connect Four");
-        setSize(DIMENSION);
         
-        board = new Board();
+        this.board = board;
         players = createPlayers();
-        currentPlayer = players[0];
+        game = new c4.engine.Game(board, players[0], players[1]);
         
         configureUI();
+        fitSize();
         setLocationRelativeTo(null);
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                if (analysis != null) {
+                    analysis.close();
+                }
+            }
+        });
         setVisible(true);
         setResizable(false);
     }
     
+    /** 
+     * Record the games played from now on, including the current one,
+     * in the given log; null for none. A game abandoned by starting
+     * a new one is recorded as unfinished.
+     */
+    public void setGameLog(GameLog log) {
+        this.gameLog = log;
+        game.setResultListener(log);
+    }
+    
+    /** Size this dialog to fit its content, but no smaller than
+     * a standard board. */
+    private void fitSize() {
+        pack();
+        setSize(Math.max(getWidth(), DIMENSION.width), 
+                Math.max(getHeight(), DIMENSION.height));
+    }
+    
     /** Create two players. */
     private ColorPlayer[] createPlayers() {
         return new ColorPlayer[] {
@@ -88,8 +156,12 @@ public class C4Dialog extends JDialog implements BoardPanel.Game {
         buttons.add(playButton);
         playButton.setFocusPainted(false);
         playButton.addActionListener(this::playButtonClicked);
+        buttons.add(analysisBox);
+        analysisBox.setFocusPainted(false);
+        analysisBox.addActionListener(e -> 
+                showAnalysis(analysisBox.isSelected()));
         content.add(buttons, BorderLayout.NORTH);
-        msgBar.setText(currentPlayer.name() + "' turn.");
+        msgBar.setText(currentPlayer().name() + "' turn.");
         msgBar.setBorder(BorderFactory.createEmptyBorder(5,20,0,0));
         content.add(msgBar, BorderLayout.SOUTH);
         return content;
@@ -101,7 +173,7 @@ public class C4Dialog extends JDialog implements BoardPanel.Game {
         boardPanel.setBoardClickListener(new BoardPanel.BoardClickListener() {
             @Override
             public void slotClicked(int slot) {
-                if (!isGameOver && board.isSlotOpen(slot)) {
+                if (!isGameOver() && board.isSlotOpen(slot)) {
                     makeMove(slot);
                 }
             }
@@ -110,16 +182,120 @@ public class C4Dialog extends JDialog implements BoardPanel.Game {
         return boardPanel;
     }
     
+    /**
+     * Show or hide the scores of the open slots, analyzing the board
+     * in the background while they are shown.
+     */
+    private void showAnalysis(boolean show) {
+        if (analysis != null) {
+            analysis.close();
+            analysis = null;
+        }
+        if (show) {
+            analysis = new Analysis();
+        }
+        boardPanel.setAnalysis(analysis);
+        fitSize();
+    }
+    
     /** Show the given string on the message bar. */
     private void showMessage(String msg) {
         msgBar.setText(msg);
     }
     
-    /** To be called when the play button is clicked. If the current game
+    /**
+     * Replay the games of the given source instead of playing games, 
+     * e.g., to review games recorded in a log or to watch those of
+     * a running arena. The play button pauses and resumes the replay.
+     * Games not played on a board of the shape of this dialog's are 
+     * skipped, and replayed games aren't recorded.
+     */
+    public void replay(Replay.Source source) {
+        game.setResultListener(null);
+        replay = new Replay(game, source, this::replayed);
+        playButton.setText("Pause");
+        add(makeReplayPanel(), BorderLayout.SOUTH);
+        fitSize();
+        showMessage("Waiting for games...");
+        boardPanel.repaint();
+        replay.start();
+    }
+    
+    /** Create a replay panel consisting of a speed box, a button to
+     * skip a game and a slider to move within a game. */
+    private JPanel makeReplayPanel() {
+        JPanel content = new JPanel(new BorderLayout());
+        content.setBorder(BorderFactory.createEmptyBorder(0,15,5,15));
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        for (int speed: REPLAY_SPEEDS) {
+            speedBox.addItem(speed == Replay.UNTHROTTLED ? "Max" 
+                    : speed + " moves/s");
+        }
+        for (int i = 0; i < REPLAY_SPEEDS.length; i++) {
+            if (REPLAY_SPEEDS[i] == replay.speed()) {
+                speedBox.setSelectedIndex(i);
+            }
+        }
+        speedBox.addActionListener(e -> replay.setSpeed(
+                REPLAY_SPEEDS[speedBox.getSelectedIndex()]));
+        buttons.add(speedBox);
+        JButton nextButton = new JButton("Next");
+        nextButton.setFocusPainted(false);
+        nextButton.addActionListener(e -> replay.skip());
+        buttons.add(nextButton);
+        content.add(buttons, BorderLayout.NORTH);
+        plySlider.addChangeListener(e -> {
+            if (plySlider.getValueIsAdjusting() 
+                    && plySlider.getValue() != board.numOfMoves()) {
+                setReplayPaused(true);
+                replay.seek(plySlider.getValue());
+            }
+        });
+        content.add(plySlider, BorderLayout.SOUTH);
+        return content;
+    }
+    
+    /** Pause or resume the replay. */
+    private void setReplayPaused(boolean paused) {
+        replay.setPaused(paused);
+        playButton.setText(paused ? "Resume" : "Pause");
+    }
+    
+    /** To be called at most once a frame when moves have been replayed
+     * or taken back, the board having been cleared or moves taken back
+     * if the given argument is true. */
+    private void replayed(boolean jumped) {
+        GameRecord r = replay.record();
+        int ply = board.numOfMoves();
+        String msg = String.format("#%d %s vs %s, %d/%d", 
+                replay.numOfGames(), replay.playerName(r.firstId()), 
+                replay.playerName(r.secondId()), ply, r.numOfMoves());
+        if (ply == r.numOfMoves()) {
+            msg += ", " + r.result().toString().toLowerCase()
+                    .replace('_', ' ');
+        }
+        showMessage(msg);
+        if (plySlider.getMaximum() != r.numOfMoves()) {
+            plySlider.setMaximum(r.numOfMoves());
+        }
+        if (!plySlider.getValueIsAdjusting()) {
+            plySlider.setValue(ply);
+        }
+        if (jumped || game.isOver()) {
+            // the panel repaints the slots of drops, but not the
+            // winning row and the slots emptied by taking back moves
+            boardPanel.repaint();
+        }
+    }
+    
+    /** To be called when the play button is clicked. If games are
+     * replayed, pause or resume the replay. If the current game
      * is over, start a new game; otherwise, prompt the user for
      * confirmation and then proceed accordingly. */
     private void playButtonClicked(ActionEvent event) {
-        if (isGameOver()) {
+        if (replay != null) {
+            setReplayPaused(!replay.isPaused());
+        } else if (isGameOver()) {
             startNewGame();
         } else {
             if (JOptionPane.showConfirmDialog(C4Dialog.this, 
@@ -130,65 +306,112 @@ public class C4Dialog extends JDialog implements BoardPanel.Game {
         }
     }    
 
-    /** Start a new game. */
+    /** Start a new game of the current players. */
     private void startNewGame() {
-        board.clear();
-        isGameOver = false;
-        currentPlayer = players[0];
-        showMessage(currentPlayer.name() + "' turn.");
+        if (gameLog != null && !game.isOver() && board.numOfMoves() > 0) {
+            try {
+                gameLog.append(game);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        game = new c4.engine.Game(board, players[0], players[1]);
+        game.setResultListener(gameLog);
+        showMessage(currentPlayer().name() + "' turn.");
         repaint();
     }
     
-    /** Return true if the game is over or no game is in progress. */
+    /** Return true if the game is over or no game is in progress, 
+     * including when games are replayed. */
     @Override
     public boolean isGameOver() {
-        return isGameOver;
+        return replay != null || game.isOver();
     }
     
     /** Return the player who has the turn. */
     @Override
     public ColorPlayer currentPlayer() {
-        return currentPlayer;
+        return (ColorPlayer) game.currentPlayer();
     }
     
     /** Return the opponent who doesn't have the turn. */
     @Override
     public ColorPlayer opponent() {
-        return currentPlayer == players[0] ? players[1] : players[0];
+        return (ColorPlayer) game.opponent();
     }
     
     /** Slide a checker at the specified slot for the current player. */
     private void makeMove(int slot) {
-        board.dropInSlot(slot, currentPlayer());
-        if (board.isWonBy(currentPlayer())) {
+        game.play(slot);
+        if (game.winner() != null) {
             markWin();
-        } else if (board.isFull()) {
+        } else if (game.isDraw()) {
             markDraw();
         } else {
             changeTurn();
         }
-        repaint();
+        boardPanel.repaintStatus();
     }
     
-    /** End the current game by indicating the current player's win. */
+    /** Indicate the current player's win. */
     private void markWin() {
-        showMessage(currentPlayer.name() + " won!");
-        isGameOver = true;
+        showMessage(game.winner().name() + " won!");
     }
     
-    /** End the current game by indicating a draw. */
+    /** Indicate a draw. */
     private void markDraw() {
         showMessage("Draw!");
-        isGameOver = true;
     }
     
-    /** Change the playing turn. */
+    /** Indicate the change of the playing turn. */
     private void changeTurn() {
-        currentPlayer = opponent();
-        showMessage(currentPlayer.name() + "'s turn.");
+        showMessage(currentPlayer().name() + "'s turn.");
     }
     
-    public static void main(String[] args) {
-        new C4Dialog();
+    /** 
+     * Start a game on a standard board or, if given as an argument in
+     * the form <code>WxH[xN]</code>, a board of W slots of H places 
+     * won by lining up N (4 if omitted) checkers. If the arguments
+     * include <code>-log dir</code>, games are recorded in the 
+     * {@link GameLog} of the given directory. If they include
+     * <code>-replay dir</code>, the games of the log of the given
+     * directory are replayed instead; with <code>-follow</code>,
+     * games appended to the log, e.g., by a running
+     * {@link c4.engine.Arena}, are replayed as they are recorded.
+     */
+    public static void main(String[] args) throws IOException {
+        Board board = new Board();
+        GameLog log = null;
+        String replayDir = null;
+        boolean follow = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-log")) {
+                log = new GameLog(Paths.get(args[++i]));
+            } else if (args[i].equals("-replay")) {
+                replayDir = args[++i];
+            } else if (args[i].equals("-follow")) {
+                follow = true;
+            } else {
+                String[] size = args[i].split("x");
+                board = new Board(Integer.parseInt(size[0]), 
+                        Integer.parseInt(size[1]), size.length > 2 
+                        ? Integer.parseInt(size[2]) : Board.CONNECT);
+            }
+        }
+        C4Dialog dialog = new C4Dialog(board);
+        if (replayDir != null) {
+            dialog.replay(new Replay.LogSource(Paths.get(replayDir), 0, 
+                    follow));
+        } else if (log != null) {
+            GameLog gameLog = log;
+            dialog.setGameLog(gameLog);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    gameLog.close();
+                } catch (IOException e) {
+                    // nothing more to do on exit
+                }
+            }));
+        }
     }
 }
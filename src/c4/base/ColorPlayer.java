@@ -2,10 +2,12 @@ package c4.base;
 
 import java.awt.*;
 
+import c4.engine.Ai;
 import c4.model.Player;
 
 /**
- * An player who knows his or her checker color.
+ * An player who knows his or her checker color. A computer player
+ * is displayed as a color player attached to its bot.
  *
  * @author Yoonsik Cheon
  * @version $Revision: 1.1 $
@@ -15,15 +17,31 @@ public class ColorPlayer extends Player {
     /** Color of this player's checkers. */
     private final Color color;
 
+    /** Bot choosing the moves of this player; null for a human. */
+    private final Ai ai;
+
     /** Create a new player whose name and checker color are given. */
     public ColorPlayer(String name, Color color) {
+        this(name, color, null);
+    }
+
+    /** Create a new player whose name, checker color and bot are
+     * given; null for a human player. */
+    public ColorPlayer(String name, Color color, Ai ai) {
         super(name);
         this.color = color;
+        this.ai = ai;
     }
 
     /** Returns the color of this player's checkers. */
     public Color color() {
         return color;
     }
+
+    /** Returns the bot choosing the moves of this player; null for 
+     * a human player. */
+    public Ai ai() {
+        return ai;
+    }
     
 }
@@ -0,0 +1,347 @@
+package c4.base;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.swing.Timer;
+
+import c4.engine.Game;
+import c4.engine.GameLogReader;
+import c4.engine.GameRecord;
+import c4.model.Board;
+
+/**
+ * A replay of recorded games in a game, move by move, at an adjustable
+ * speed of up to as fast as possible. Games are taken one after another
+ * from a source, such as a {@link c4.engine.GameLog} being written by
+ * an {@link c4.engine.Arena}, and each is played in the game from its start.
+ *
+ * A replay is driven by a Swing timer firing once a frame, and all its
+ * methods are to be called on the event dispatch thread. At each tick,
+ * the moves due since the previous one are played together, so drops
+ * made between two frames are painted in a single repaint. When
+ * unthrottled, moves are played for a part of each frame, leaving the
+ * rest for painting. A replayed game may be rewound or fast-forwarded
+ * to any move by taking back or playing moves.
+ *
+ * @see c4.engine.GameLog
+ */
+public class Replay {
+
+    /** Source of the games to replay. */
+    public interface Source {
+
+        /** Return the next game; null if there is none at the moment. */
+        GameRecord next() throws IOException;
+
+        /** Return the name of the player of the given id; null if
+         * unknown. By default, this method returns null. */
+        default String playerName(int id) {
+            return null;
+        }
+    }
+
+    /** Listener notified at most once a frame of the progress of a replay. */
+    public interface Listener {
+
+        /**
+         * Called when moves have been played or taken back. If the
+         * board was cleared or moves taken back, the given argument
+         * is true.
+         */
+        void replayed(boolean jumped);
+    }
+
+    /** Speed at which moves are played as fast as possible. */
+    public static final int UNTHROTTLED = 0;
+
+    /** Time between two frames in milliseconds. */
+    private static final int FRAME_MILLIS = 16;
+
+    /** Time spent playing moves in an unthrottled frame in nanoseconds. */
+    private static final long FRAME_BUDGET = 10_000_000;
+
+    /** Number of moves' worth of time to show a game over before the
+     * next one, when throttled. */
+    private static final int HOLD_MOVES = 5;
+
+    /** Game in which games are replayed. */
+    private final Game game;
+
+    /** Board of the game. */
+    private final Board board;
+
+    /** Source of the games. */
+    private final Source source;
+
+    /** Listener of the progress. */
+    private final Listener listener;
+
+    /** Timer ticking once a frame. */
+    private final Timer timer;
+
+    /** Game being replayed; null if none yet. */
+    private GameRecord record;
+
+    /** Number of games replayed, including the current one. */
+    private long numOfGames;
+
+    /** Number of moves played per second; UNTHROTTLED for no limit. */
+    private int speed = 10;
+
+    /** Is the replay paused? */
+    private boolean paused;
+
+    /** Moves due but not played yet; fractional when throttled. */
+    private double due;
+
+    /** Moves' worth of time left to show the end of a game. */
+    private int hold;
+
+    /** System.nanoTime() of the previous tick. */
+    private long lastTick;
+
+    /** Have moves been played or taken back since the last notification,
+     * and has the board been cleared or moves taken back? */
+    private boolean changed, jumped;
+
+    /**
+     * Create a new replay of the games of the given source in the given
+     * game, notifying the given listener of its progress. The result
+     * listener of the game, if any, is notified of the replayed games
+     * that are over.
+     */
+    public Replay(Game game, Source source, Listener listener) {
+        this.game = game;
+        this.board = game.board();
+        this.source = source;
+        this.listener = listener;
+        timer = new Timer(FRAME_MILLIS, e -> tick());
+    }
+
+    /** Start or restart replaying. */
+    public void start() {
+        lastTick = System.nanoTime();
+        timer.start();
+    }
+
+    /** Stop replaying; the current position stays on the board. */
+    public void stop() {
+        timer.stop();
+    }
+
+    /** Set the number of moves played per second; UNTHROTTLED for
+     * no limit. */
+    public void setSpeed(int movesPerSecond) {
+        if (movesPerSecond < 0) {
+            throw new IllegalArgumentException(
+                    "Speed must not be negative: " + movesPerSecond);
+        }
+        speed = movesPerSecond;
+        due = 0;
+    }
+
+    /** Return the number of moves played per second; UNTHROTTLED for
+     * no limit. */
+    public int speed() {
+        return speed;
+    }
+
+    /** Pause or resume the replay. A paused game may still be rewound
+     * or fast-forwarded by {@link #seek(int)}. */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        due = 0;
+    }
+
+    /** Is the replay paused? */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /** Return the game being replayed; null if none yet. */
+    public GameRecord record() {
+        return record;
+    }
+
+    /** Return the number of games replayed, including the current one. */
+    public long numOfGames() {
+        return numOfGames;
+    }
+
+    /** Return the name of the player of the given id; "?" if unknown. */
+    public String playerName(int id) {
+        String name = source.playerName(id);
+        return name != null ? name : "?";
+    }
+
+    /**
+     * Take back or play moves of the current game so that the given
+     * number of its moves are on the board, and notify the listener.
+     */
+    public void seek(int ply) {
+        if (record == null) {
+            return;
+        }
+        ply = Math.max(0, Math.min(ply, record.numOfMoves()));
+        while (board.numOfMoves() > ply) {
+            game.undo();
+            changed = jumped = true;
+        }
+        while (board.numOfMoves() < ply && playMove()) {
+        }
+        hold = 0;
+        notifyListener();
+    }
+
+    /** Skip the rest of the current game and start the next one, if
+     * available, and notify the listener. */
+    public void skip() {
+        hold = 0;
+        nextGame();
+        notifyListener();
+    }
+
+    /** Play the moves due since the previous tick and notify the
+     * listener once. */
+    private void tick() {
+        long now = System.nanoTime();
+        if (!paused) {
+            if (speed == UNTHROTTLED) {
+                long deadline = now + FRAME_BUDGET;
+                while (step() && System.nanoTime() < deadline) {
+                }
+            } else {
+                // don't catch up on more than two frames' worth of moves
+                due = Math.min(due + (now - lastTick) * speed / 1e9,
+                        Math.max(1, speed * 2 * FRAME_MILLIS / 1000.0));
+                while (due >= 1 && step()) {
+                    due--;
+                }
+            }
+        }
+        lastTick = now;
+        notifyListener();
+    }
+
+    /**
+     * Play the next move, or hold the end of a game, or start the next
+     * game; return false if there is nothing to replay at the moment.
+     */
+    private boolean step() {
+        if (record != null && playMove()) {
+            return true;
+        }
+        if (hold > 0) {
+            hold--;
+            return true;
+        }
+        return nextGame();
+    }
+
+    /** Play the next move of the current game; return false if it
+     * can't be played, e.g., if the record is corrupt. */
+    private boolean playMove() {
+        int ply = board.numOfMoves();
+        if (ply >= record.numOfMoves() || game.isOver()) {
+            return false;
+        }
+        try {
+            game.play(record.moveAt(ply));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        changed = true;
+        if (board.numOfMoves() == record.numOfMoves() || game.isOver()) {
+            hold = speed == UNTHROTTLED ? 0 : HOLD_MOVES;
+        }
+        return true;
+    }
+
+    /** Start replaying the next game from the source that fits the
+     * board; return false if there is none at the moment. */
+    private boolean nextGame() {
+        try {
+            GameRecord next;
+            do {
+                next = source.next();
+            } while (next != null && !fits(next));
+            if (next == null) {
+                return false;
+            }
+            record = next;
+        } catch (IOException e) {
+            return false;
+        }
+        numOfGames++;
+        game.start();
+        changed = jumped = true;
+        return true;
+    }
+
+    /** Was the given game played on a board of the shape of ours? */
+    private boolean fits(GameRecord r) {
+        return r.numOfSlots() == board.numOfSlots()
+                && r.slotHeight() == board.slotHeight()
+                && r.connectLength() == board.connectLength();
+    }
+
+    /** Notify the listener if anything has changed. */
+    private void notifyListener() {
+        if (changed || jumped) {
+            boolean j = jumped;
+            changed = jumped = false;
+            listener.replayed(j);
+        }
+    }
+
+    /**
+     * A source of the games of a {@link c4.engine.GameLog}, from the game
+     * of a given number on. If following the log, games appended to it
+     * after they have all been replayed are picked up by refreshing its
+     * reader, at most once a second.
+     */
+    public static class LogSource implements Source {
+
+        /** Time between two refreshes of a followed log in nanoseconds. */
+        private static final long REFRESH_INTERVAL = 1_000_000_000;
+
+        /** Does this source pick up games appended to the log? */
+        private final boolean follow;
+
+        /** Reader of the log. */
+        private final GameLogReader reader;
+
+        /** Number of the next game. */
+        private long next;
+
+        /** System.nanoTime() when the reader was last refreshed. */
+        private long refreshed;
+
+        /** Create a new source of the games of the log in the given
+         * directory from the given number on, following the log if
+         * the given argument is true. */
+        public LogSource(Path dir, long first, boolean follow)
+                throws IOException {
+            this.follow = follow;
+            next = first;
+            reader = new GameLogReader(dir);
+            refreshed = System.nanoTime();
+        }
+
+        @Override
+        public GameRecord next() throws IOException {
+            if (next >= reader.size() && follow
+                    && System.nanoTime() - refreshed >= REFRESH_INTERVAL) {
+                reader.refresh();
+                refreshed = System.nanoTime();
+            }
+            return next < reader.size() ? reader.get(next++) : null;
+        }
+
+        @Override
+        public String playerName(int id) {
+            return reader.playerName(id);
+        }
+    }
+}
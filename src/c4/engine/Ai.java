@@ -0,0 +1,100 @@
+package c4.engine;
+
+import c4.model.Board;
+import c4.search.OpeningBook;
+import c4.search.Solver;
+
+/**
+ * A computer player that chooses its own moves. A subclass 
+ * determines the playing strategy by overriding the 
+ * {@link #move(Board)} method. A bot has no name or color of its
+ * own; a user interface attaches it to a player for display.
+ */
+public abstract class Ai implements MoveProvider {
+
+    /** Book of opening moves to play without thinking; null if none. */
+    private OpeningBook openingBook;
+
+    /** Solver of endgame positions; null if none. */
+    private Solver solver;
+
+    /** Largest number of empty places of a position to solve. */
+    private int solverEmpty;
+
+    /** Use the given opening book; null for none. */
+    public void setOpeningBook(OpeningBook book) {
+        this.openingBook = book;
+    }
+
+    /** 
+     * Return the move of the opening book for the given board; 
+     * -1 if there is no book or the board is out of the book. 
+     */
+    protected int bookMove(Board board) {
+        return openingBook == null ? -1 : openingBook.bestMove(board);
+    }
+
+    /** 
+     * Play perfectly, using the given solver, in positions of up to 
+     * the given number of empty places; null for no solver. 
+     */
+    public void setSolver(Solver solver, int maxEmpty) {
+        this.solver = solver;
+        this.solverEmpty = maxEmpty;
+    }
+
+    /** 
+     * Return the perfect move of the solver for the given board; -1 if
+     * there is no solver or the board has too many empty places. 
+     */
+    protected int solverMove(Board board) {
+        if (solver == null || board.numOfSlots() * board.slotHeight() 
+                - board.numOfMoves() > solverEmpty
+                || board.numOfSlots() * (board.slotHeight() + 1) > 64) {
+            return -1;
+        }
+        return solver.bestMove(board);
+    }
+
+    /** Called when a new game is started. */
+    @Override
+    public void initGame() {
+    }
+
+    /**
+     * Return the 0-based index of the slot in which to drop the next
+     * checker of this player. This player must be the side to move
+     * on the given board, and the board must have an open slot.
+     * The board may be used for a search but is left unchanged.
+     */
+    @Override
+    public abstract int move(Board board);
+
+    /**
+     * Called when the opponent has the turn on the given board. 
+     * This player may keep thinking on the board, which it owns from 
+     * now on, until {@link #stopPondering()} is called; this method 
+     * must return without waiting. By default, this method does nothing.
+     */
+    public void ponder(Board board) {
+    }
+
+    /** 
+     * Stop thinking started by {@link #ponder(Board)}, if any, and 
+     * return when it has stopped. By default, this method does nothing.
+     */
+    public void stopPondering() {
+    }
+
+    /**
+     * Stop thinking for good, e.g., when this player is replaced: stop
+     * pondering and make the move being computed, if any, return as 
+     * soon as possible, its result to be ignored. Moves computed after
+     * this method is called may also be cut short, until a new game is
+     * started by {@link #initGame()}. By default, this method only stops
+     * pondering.
+     */
+    public void stop() {
+        stopPondering();
+    }
+}
@@ -0,0 +1,160 @@
+package c4.engine;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import c4.model.Board;
+import c4.search.LazySmp;
+import c4.search.TranspositionTable;
+
+/**
+ * A computer player searching the game tree to a fixed depth using
+ * negamax with alpha-beta pruning and a transposition table.
+ * The search may run on several threads sharing the table.
+ * If a time limit is set, the search goes iteratively deeper, up to 
+ * the depth, until the time runs out. If pondering is enabled, the 
+ * bot keeps searching while the opponent is thinking, so that the 
+ * table is filled with the positions likely to come next.
+ *
+ * @see c4.search.AlphaBeta
+ * @see c4.search.LazySmp
+ */
+public class AlphaBetaBot extends Ai {
+
+    /** Default search depth in plies. */
+    public static final int DEFAULT_DEPTH = 8;
+
+    /** Default size of the transposition table in MB. */
+    public static final int DEFAULT_TABLE_SIZE = 8;
+
+    /** Search depth in plies. */
+    private final int depth;
+
+    /** Cache of search results. */
+    private final TranspositionTable table;
+
+    /** Search engine. */
+    private final LazySmp search;
+
+    /** Time limit of a move in milliseconds; 0 for no limit. */
+    private long timeLimit;
+
+    /** Does this bot think while the opponent has the turn? */
+    private boolean pondering;
+
+    /** Runs pondering searches; created on demand. */
+    private ExecutorService ponderer;
+
+    /** Pondering search in progress; null if none. */
+    private Future<?> ponderTask;
+
+    /** Create a new bot searching to the default depth. */
+    public AlphaBetaBot() {
+        this(DEFAULT_DEPTH);
+    }
+
+    /** Create a new bot searching to the given depth in plies. */
+    public AlphaBetaBot(int depth) {
+        this(depth, DEFAULT_TABLE_SIZE, 1);
+    }
+
+    /** 
+     * Create a new bot of the given search depth using a transposition
+     * table of the given size in MB and searching on the given number
+     * of threads. 
+     */
+    public AlphaBetaBot(int depth, int tableSize, int threads) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be positive: " 
+                    + depth);
+        }
+        this.depth = depth;
+        this.table = new TranspositionTable(tableSize);
+        this.search = new LazySmp(table, threads);
+    }
+
+    /** Return the search depth of this bot in plies. */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Set the time limit of a move in milliseconds. If positive, the 
+     * search goes iteratively deeper, up to the depth of this bot, 
+     * and plays the best move of the last depth completed in time.
+     * If 0, the search always goes to the depth of this bot.
+     */
+    public void setTimeLimit(long millis) {
+        this.timeLimit = millis;
+    }
+
+    /** Enable or disable thinking while the opponent has the turn. */
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+    }
+
+    /** Forget the positions searched in the previous game. */
+    @Override
+    public void initGame() {
+        stopPondering();
+        search.resume();
+        table.clear();
+    }
+
+    /** Return the book or solver move, if any, or the best move searched. */
+    @Override
+    public int move(Board board) {
+        stopPondering();
+        int slot = bookMove(board);
+        if (slot < 0) {
+            slot = solverMove(board);
+        }
+        if (slot >= 0) {
+            return slot;
+        }
+        return timeLimit > 0 ? search.bestMove(board, depth, timeLimit)
+                : search.bestMove(board, depth);
+    }
+
+    /** Search the given board until stopped if pondering is enabled. */
+    @Override
+    public synchronized void ponder(Board board) {
+        stopPondering();
+        if (pondering && !board.isFull()) {
+            if (ponderer == null) {
+                ponderer = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "ponder");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            ponderTask = ponderer.submit(
+                    () -> search.bestMove(board, depth, 0));
+        }
+    }
+
+    @Override
+    public synchronized void stopPondering() {
+        if (ponderTask != null) {
+            search.stop();
+            try {
+                ponderTask.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            ponderTask = null;
+            search.resume();
+        }
+    }
+
+    /** Stop pondering and make searches fail until a new game. */
+    @Override
+    public void stop() {
+        stopPondering();
+        search.stop();
+    }
+}
@@ -0,0 +1,406 @@
+package c4.engine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import c4.model.Board;
+import c4.model.Player;
+
+/**
+ * A command-line tournament of computer players. Each pairing plays
+ * a number of games in batches spread over a pool of threads. Games
+ * are played in pairs starting from the same random opening, with 
+ * each player moving first once. For each pairing, the numbers of
+ * wins, draws and losses are reported along with the Elo difference 
+ * and its 95% confidence interval.
+ * 
+ * Usage: <code>Arena [-games n] [-opening plies] [-threads n] 
+ * [-seed n] [-board WxH[xN]] [-gauntlet] [-log dir] player player...</code>, 
+ * where the board is given by its numbers of slots and places in a 
+ * slot and the length of a winning row (4 if omitted), and a player is 
+ * given as the name of a {@link MoveProvider} class with a public 
+ * constructor, optionally followed by a colon and an int argument of 
+ * the constructor, e.g., <code>AlphaBetaBot:6</code>. A class name 
+ * without a package is looked up in the <code>c4.engine</code> package.
+ * In a gauntlet, the first player plays all the others; otherwise, 
+ * every player plays every other player. Games are recorded in the
+ * {@link GameLog} of the given directory, if any.
+ */
+public class Arena {
+
+    /** Number of games played by a task; an even number. */
+    private static final int BATCH_SIZE = 100;
+
+    /** Number of games of each pairing. */
+    private int games = 1000;
+
+    /** Number of random moves of an opening. */
+    private int openingPlies = 2;
+
+    /** Number of threads to play games. */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Seed of the random openings. */
+    private long seed = 1;
+
+    /** Number of slots, places in a slot and checkers in a winning 
+     * row of the boards of games. */
+    private int numOfSlots = Board.NUM_OF_SLOTS;
+    private int slotHeight = Board.SLOT_HEIGHT;
+    private int connect = Board.CONNECT;
+
+    /** Does the first player play all the others? */
+    private boolean gauntlet;
+
+    /** Log recording the games played; null if none. */
+    private GameLog gameLog;
+
+    /** Names of the players. */
+    private final List<String> names = new ArrayList<>();
+
+    /** Factories of the move providers of the players. */
+    private final List<Supplier<MoveProvider>> factories = new ArrayList<>();
+
+    /** Create a new arena with the default settings and no players. */
+    public Arena() {
+    }
+
+    /** Set the number of games of each pairing, rounded up to an even number. */
+    public void setGames(int games) {
+        this.games = games + games % 2;
+    }
+
+    /** Set the number of random moves of an opening; fewer are played
+     * if every open slot would end the game. */
+    public void setOpeningPlies(int plies) {
+        this.openingPlies = plies;
+    }
+
+    /** Set the number of threads to play games. */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /** Set the seed of the random openings. */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Set the numbers of slots and places in a slot and the number of
+     * checkers in a winning row of the boards of games.
+     *
+     * @throws IllegalArgumentException if there can't be such a board
+     */
+    public void setBoard(int numOfSlots, int slotHeight, int connect) {
+        new Board(numOfSlots, slotHeight, connect); // fail early
+        this.numOfSlots = numOfSlots;
+        this.slotHeight = slotHeight;
+        this.connect = connect;
+    }
+
+    /** Make the first player play all the others. */
+    public void setGauntlet(boolean gauntlet) {
+        this.gauntlet = gauntlet;
+    }
+
+    /** Record the games played in the given log; null for none. */
+    public void setGameLog(GameLog log) {
+        this.gameLog = log;
+    }
+
+    /** 
+     * Add a player of the given name whose moves are provided by 
+     * objects of the given factory. A new provider is created for
+     * each batch of games and used by a single thread.
+     */
+    public void addPlayer(String name, Supplier<MoveProvider> factory) {
+        names.add(name);
+        factories.add(factory);
+    }
+
+    /** 
+     * Add a player given in the command-line syntax, e.g., 
+     * "AlphaBetaBot:6". 
+     *
+     * @throws IllegalArgumentException if the player can't be created
+     */
+    public void addPlayer(String spec) {
+        int colon = spec.indexOf(':');
+        String className = colon < 0 ? spec : spec.substring(0, colon);
+        if (className.indexOf('.') < 0) {
+            className = Arena.class.getPackage().getName() + "." 
+                    + className;
+        }
+        try {
+            Class<? extends MoveProvider> type = 
+                    Class.forName(className).asSubclass(MoveProvider.class);
+            Constructor<? extends MoveProvider> constructor = colon < 0 
+                    ? type.getConstructor() : type.getConstructor(int.class);
+            Object[] args = colon < 0 ? new Object[0] 
+                    : new Object[] {Integer.parseInt(spec.substring(colon + 1))};
+            constructor.newInstance(args); // fail early
+            addPlayer(spec, () -> {
+                try {
+                    return constructor.newInstance(args);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (ReflectiveOperationException | ClassCastException 
+                | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid player: " + spec, e);
+        }
+    }
+
+    /** 
+     * Play all the pairings and return their results in the order of
+     * the players.
+     */
+    public List<Result> run() throws InterruptedException {
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            for (int j = i + 1; j < names.size(); j++) {
+                if (!gauntlet || i == 0) {
+                    results.add(new Result(i, j));
+                }
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (Result r: results) {
+                for (int played = 0, batch = 0; played < games; 
+                        played += BATCH_SIZE, batch++) {
+                    int n = Math.min(BATCH_SIZE, games - played);
+                    long batchSeed = seed * 1000003 + r.first * 1009 
+                            + r.second * 101 + batch;
+                    futures.add(pool.submit(() -> 
+                            playBatch(r.first, r.second, n, batchSeed)));
+                }
+            }
+            int k = 0;
+            for (Result r: results) {
+                for (int played = 0; played < games; played += BATCH_SIZE) {
+                    int[] wdl = futures.get(k++).get();
+                    r.wins += wdl[0];
+                    r.draws += wdl[1];
+                    r.losses += wdl[2];
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /** 
+     * Play the given number of games between the given players and 
+     * return the numbers of wins, draws and losses of the first player.
+     */
+    private int[] playBatch(int first, int second, int n, long seed) {
+        Random random = new Random(seed);
+        MoveProvider a = factories.get(first).get();
+        MoveProvider b = factories.get(second).get();
+        Player pa = new Player(names.get(first));
+        Player pb = new Player(names.get(second));
+        int[] wdl = new int[3];
+        int[] opening = new int[openingPlies];
+        int plies = 0;
+        for (int g = 0; g < n; g++) {
+            boolean aFirst = g % 2 == 0;
+            Board board = new Board(numOfSlots, slotHeight, connect);
+            Game game = aFirst ? new Game(board, pa, pb) 
+                    : new Game(board, pb, pa);
+            game.setResultListener(gameLog);
+            if (aFirst) {
+                plies = randomOpening(random, opening);
+            }
+            for (int i = 0; i < plies; i++) {
+                game.play(opening[i]);
+            }
+            a.initGame();
+            b.initGame();
+            Player winner = aFirst ? game.playOut(a, b) : game.playOut(b, a);
+            wdl[winner == pa ? 0 : (winner == null ? 1 : 2)]++;
+        }
+        if (gameLog != null) {
+            try {
+                gameLog.flush(); // let replays following the log see them
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return wdl;
+    }
+
+    /** 
+     * Draw random opening moves into the given array and return their
+     * number. A move ending the game, by a win or by filling the board, 
+     * is never drawn, so the opening stops short if every open slot 
+     * would end the game.
+     */
+    private int randomOpening(Random random, int[] moves) {
+        Board board = new Board(numOfSlots, slotHeight, connect);
+        int[] slots = new int[numOfSlots];
+        for (int i = 0; i < moves.length; i++) {
+            int n = 0;
+            if (board.numOfMoves() + 1 < numOfSlots * slotHeight) {
+                for (int slot = 0; slot < numOfSlots; slot++) {
+                    if (board.isSlotOpen(slot) 
+                            && !board.isWinningMove(slot)) {
+                        slots[n++] = slot;
+                    }
+                }
+            }
+            if (n == 0) {
+                return i;
+            }
+            moves[i] = slots[random.nextInt(n)];
+            board.play(moves[i]);
+        }
+        return moves.length;
+    }
+
+    /** Results of the games between two players. */
+    public class Result {
+
+        /** Indices of the players. */
+        private final int first, second;
+
+        /** Numbers of wins, draws and losses of the first player. */
+        private int wins, draws, losses;
+
+        /** Create a new result of the given players. */
+        private Result(int first, int second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        /** Return the number of wins of the first player. */
+        public int wins() {
+            return wins;
+        }
+
+        /** Return the number of draws. */
+        public int draws() {
+            return draws;
+        }
+
+        /** Return the number of losses of the first player. */
+        public int losses() {
+            return losses;
+        }
+
+        /** Return the score of the first player per game. */
+        public double score() {
+            return (wins + draws / 2.0) / (wins + draws + losses);
+        }
+
+        /** Return the Elo difference of the first player. */
+        public double elo() {
+            return eloOf(score());
+        }
+
+        /** 
+         * Return the margin of the 95% confidence interval of the 
+         * score of the first player per game.
+         */
+        public double margin() {
+            int n = wins + draws + losses;
+            double p = score();
+            double variance = (wins * (1 - p) * (1 - p) 
+                    + draws * (0.5 - p) * (0.5 - p) 
+                    + losses * p * p) / n;
+            return 1.96 * Math.sqrt(variance / n);
+        }
+
+        @Override
+        public String toString() {
+            double p = score();
+            double m = margin();
+            return String.format("%-16s %-16s %7d %7d %7d %6.3f %8.1f [%.1f, %.1f]",
+                    names.get(first), names.get(second), wins, draws, losses,
+                    p, eloOf(p), eloOf(p - m), eloOf(p + m));
+        }
+    }
+
+    /** Return the Elo difference of the given score per game. */
+    private static double eloOf(double score) {
+        double p = Math.max(1e-6, Math.min(1 - 1e-6, score));
+        return -400 * Math.log10(1 / p - 1);
+    }
+
+    public static void main(String[] args) 
+            throws InterruptedException, IOException {
+        Arena arena = new Arena();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                case "-games":
+                    arena.setGames(Integer.parseInt(args[++i]));
+                    break;
+                case "-opening":
+                    arena.setOpeningPlies(Integer.parseInt(args[++i]));
+                    break;
+                case "-threads":
+                    arena.setThreads(Integer.parseInt(args[++i]));
+                    break;
+                case "-seed":
+                    arena.setSeed(Long.parseLong(args[++i]));
+                    break;
+                case "-board":
+                    String[] size = args[++i].split("x");
+                    arena.setBoard(Integer.parseInt(size[0]), 
+                            Integer.parseInt(size[1]), size.length > 2 
+                            ? Integer.parseInt(size[2]) : Board.CONNECT);
+                    break;
+                case "-gauntlet":
+                    arena.setGauntlet(true);
+                    break;
+                case "-log":
+                    arena.setGameLog(new GameLog(Paths.get(args[++i])));
+                    break;
+                default:
+                    arena.addPlayer(args[i]);
+                }
+            }
+        } catch (RuntimeException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        if (arena.names.size() < 2) {
+            System.err.println("Usage: Arena [-games n] [-opening plies] " 
+                    + "[-threads n] [-seed n] [-board WxH[xN]] [-gauntlet] "
+                    + "[-log dir] player player...");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        List<Result> results = arena.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-16s %-16s %7s %7s %7s %6s %8s %s%n", "player", 
+                "opponent", "wins", "draws", "losses", "score", "elo", "95% ci");
+        int total = 0;
+        for (Result r: results) {
+            System.out.println(r);
+            total += r.wins + r.draws + r.losses;
+        }
+        System.out.printf("%d games in %.1f s (%.0f games/hour)%n", total, 
+                seconds, total / seconds * 3600);
+        if (arena.gameLog != null) {
+            arena.gameLog.close();
+        }
+    }
+}
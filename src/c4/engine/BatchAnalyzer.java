@@ -0,0 +1,317 @@
+package c4.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import c4.model.Board;
+import c4.search.AlphaBeta;
+import c4.search.EndgameDatabase;
+import c4.search.Solver;
+import c4.search.TranspositionTable;
+
+/**
+ * A command-line analyzer of positions in bulk. Positions are read
+ * one per line as sequences of 1-based slot indices, e.g., "4453",
+ * in chunks spread over a pool of threads, and their results are
+ * written out in the order of the input. At most a few chunks per
+ * thread are read ahead of the output, so the memory used doesn't
+ * grow with the input. Each thread keeps its own searcher and
+ * transposition table for all the positions it analyzes.
+ *
+ * By default, each position is solved exactly and written as
+ * <code>moves score result slot</code>, separated by tabs, e.g.,
+ * <code>4453 2 win in 25 4</code>; see {@link Solver} for the scores.
+ * If a depth is given, each position is searched by {@link AlphaBeta}
+ * to that depth instead and written as <code>moves score slot</code>.
+ * The slot of the best move is 1-based; "-" if the board is full.
+ * A line that isn't a position of a game in progress is written
+ * as <code>moves invalid</code>.
+ *
+ * Usage: <code>BatchAnalyzer [-threads n] [-depth plies] [-table mb]
+ * [-board WxH[xN]] [-db file] [input [output]]</code>, reading the
+ * standard input and writing the standard output by default.
+ */
+public class BatchAnalyzer {
+
+    /** Number of positions analyzed by a task. */
+    private static final int CHUNK_SIZE = 64;
+
+    /** Number of chunks per thread read ahead of the output. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Number of threads to analyze positions. */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Search depth in plies; 0 to solve positions exactly. */
+    private int depth;
+
+    /** Size of the transposition table of each thread in MB. */
+    private int tableSize = Solver.DEFAULT_TABLE_SIZE;
+
+    /** Number of slots, places in a slot and checkers in a winning
+     * row of the boards of positions. */
+    private int numOfSlots = Board.NUM_OF_SLOTS;
+    private int slotHeight = Board.SLOT_HEIGHT;
+    private int connect = Board.CONNECT;
+
+    /** Endgame database of the solvers; null if none. */
+    private EndgameDatabase database;
+
+    /** Analyzers of the threads; each used by one thread at a time. */
+    private final ThreadLocal<Worker> workers =
+            ThreadLocal.withInitial(Worker::new);
+
+    /** Create a new analyzer solving positions on all processors. */
+    public BatchAnalyzer() {
+    }
+
+    /** Set the number of threads to analyze positions. */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads must be positive: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /** Set the search depth in plies; 0 to solve positions exactly. */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /** Set the size of the transposition table of each thread in MB. */
+    public void setTableSize(int sizeInMb) {
+        this.tableSize = sizeInMb;
+    }
+
+    /**
+     * Set the numbers of slots and places in a slot and the number of
+     * checkers in a winning row of the boards of positions.
+     *
+     * @throws IllegalArgumentException if there can't be such a board
+     */
+    public void setBoard(int numOfSlots, int slotHeight, int connect) {
+        new Board(numOfSlots, slotHeight, connect); // fail early
+        this.numOfSlots = numOfSlots;
+        this.slotHeight = slotHeight;
+        this.connect = connect;
+    }
+
+    /** Look up endgame positions in the given database; null for none. */
+    public void setEndgameDatabase(EndgameDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Analyze the positions read from the given reader, one per line,
+     * and write their results to the given writer in the same order.
+     * Return the number of positions analyzed.
+     *
+     * @throws IllegalArgumentException if positions are to be solved
+     *         exactly on a board of more than 64 bits
+     */
+    public long analyze(BufferedReader in, Writer out)
+            throws IOException, InterruptedException {
+        if (depth == 0 && numOfSlots * (slotHeight + 1) > 64) {
+            throw new IllegalArgumentException(
+                    "Can't solve a board of more than 64 bits: "
+                    + numOfSlots + "x" + slotHeight);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "analyzer");
+            t.setDaemon(true);
+            return t;
+        });
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+        long n = 0;
+        try {
+            List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+            String line;
+            while ((line = in.readLine()) != null) {
+                chunk.add(line);
+                n++;
+                if (chunk.size() == CHUNK_SIZE) {
+                    submit(pool, chunk, pending);
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                    // wait for the oldest chunk when too far ahead
+                    if (pending.size() >= threads * CHUNKS_PER_THREAD) {
+                        out.write(pending.poll().get());
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(pool, chunk, pending);
+            }
+            while (!pending.isEmpty()) {
+                out.write(pending.poll().get());
+            }
+            out.flush();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return n;
+    }
+
+    /** Submit the analysis of the given lines. */
+    private void submit(ExecutorService pool, List<String> lines,
+            ArrayDeque<Future<String>> pending) {
+        pending.add(pool.submit(() -> {
+            Worker worker = workers.get();
+            StringBuilder result = new StringBuilder();
+            for (String line: lines) {
+                worker.analyze(line.trim(), result);
+                result.append('\n');
+            }
+            return result.toString();
+        }));
+    }
+
+    /** Analyzer of positions used by a single thread. */
+    private class Worker {
+
+        /** Board of the position analyzed. */
+        private final Board board = new Board(numOfSlots, slotHeight, connect);
+
+        /** Exact solver; null if searching to a depth. */
+        private final Solver solver;
+
+        /** Depth-limited search; null if solving. */
+        private final AlphaBeta search;
+
+        /** Create a new worker for the current settings. */
+        Worker() {
+            TranspositionTable table = new TranspositionTable(tableSize);
+            if (depth > 0) {
+                solver = null;
+                search = new AlphaBeta(table);
+            } else {
+                solver = new Solver(table);
+                solver.setEndgameDatabase(database);
+                search = null;
+            }
+        }
+
+        /** Append the result of the given position to the given buffer. */
+        void analyze(String moves, StringBuilder result) {
+            result.append(moves).append('\t');
+            if (!setUp(moves)) {
+                result.append("invalid");
+                return;
+            }
+            if (solver != null) {
+                Solver.Result r = solver.solve(board);
+                result.append(r.score()).append('\t').append(r).append('\t');
+                appendSlot(board.isFull() ? -1 : solver.bestMove(board),
+                        result);
+            } else if (board.isFull()) {
+                result.append("0\t-");
+            } else {
+                search.reset();
+                int slot = search.bestMove(board, depth);
+                result.append(search.score()).append('\t');
+                appendSlot(slot, result);
+            }
+        }
+
+        /**
+         * Play the given moves on the board, after clearing it; return
+         * false if they aren't moves or the game is won by one of them.
+         */
+        private boolean setUp(String moves) {
+            board.clear();
+            for (int i = 0; i < moves.length(); i++) {
+                int slot = moves.charAt(i) - '1';
+                if (slot < 0 || slot >= numOfSlots || board.isSlotFull(slot)
+                        || board.lastMoveWins(slot, board.play(slot))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Append the given 0-based slot index as a 1-based one. */
+        private void appendSlot(int slot, StringBuilder result) {
+            if (slot < 0) {
+                result.append('-');
+            } else {
+                result.append(slot + 1);
+            }
+        }
+    }
+
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        BatchAnalyzer analyzer = new BatchAnalyzer();
+        List<String> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                case "-threads":
+                    analyzer.setThreads(Integer.parseInt(args[++i]));
+                    break;
+                case "-depth":
+                    analyzer.setDepth(Integer.parseInt(args[++i]));
+                    break;
+                case "-table":
+                    analyzer.setTableSize(Integer.parseInt(args[++i]));
+                    break;
+                case "-board":
+                    String[] size = args[++i].split("x");
+                    analyzer.setBoard(Integer.parseInt(size[0]),
+                            Integer.parseInt(size[1]), size.length > 2
+                            ? Integer.parseInt(size[2]) : Board.CONNECT);
+                    break;
+                case "-db":
+                    analyzer.setEndgameDatabase(
+                            new EndgameDatabase(Paths.get(args[++i])));
+                    break;
+                default:
+                    files.add(args[i]);
+                }
+            }
+            if (files.size() > 2) {
+                throw new IllegalArgumentException("Usage: BatchAnalyzer "
+                        + "[-threads n] [-depth plies] [-table mb] "
+                        + "[-board WxH[xN]] [-db file] [input [output]]");
+            }
+        } catch (RuntimeException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        BufferedReader in = files.isEmpty()
+                ? new BufferedReader(new InputStreamReader(System.in,
+                        StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(files.get(0)));
+        Writer out = files.size() < 2
+                ? new BufferedWriter(new OutputStreamWriter(System.out,
+                        StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Paths.get(files.get(1)));
+        long start = System.nanoTime();
+        long n = 0;
+        try (BufferedReader r = in; Writer w = out) {
+            n = analyzer.analyze(r, w);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d positions in %.1f s (%.0f positions/s)%n",
+                n, seconds, n / seconds);
+    }
+}
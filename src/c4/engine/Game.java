@@ -0,0 +1,191 @@
+package c4.engine;
+
+import c4.model.Board;
+import c4.model.Player;
+
+/**
+ * A Connect Four game played by two players on a board, without any
+ * user interface. A game keeps track of the turn and detects the end
+ * of the game, either a win or a draw. A game can be played move by 
+ * move, e.g., by a user interface, or played out by move providers.
+ */
+public class Game {
+
+    /** Provided interface to notify the end of a game. */
+    public interface ResultListener {
+
+        /** Called when the given game is over. The winner is 
+         * available from the game; null for a draw. */
+        void gameOver(Game game);
+    }
+
+    /** Game board. */
+    private final Board board;
+
+    /** Two players of the game; the first one moves first. */
+    private final Player[] players;
+
+    /** Index of the player who has the turn. */
+    private int turn;
+
+    /** True if the game is over. */
+    private boolean isOver;
+
+    /** Player who won the game; null if none. */
+    private Player winner;
+
+    /** System.currentTimeMillis() when the game was started. */
+    private long startTime;
+
+    /** System.currentTimeMillis() when the game ended; 0 if not over. */
+    private long endTime;
+
+    /** Observe the end of the game. */
+    private ResultListener resultListener;
+
+    /** Create a new game of the given players on a new board. */
+    public Game(Player first, Player second) {
+        this(new Board(), first, second);
+    }
+
+    /** 
+     * Create a new game of the given players on the given board.
+     * The board is cleared.
+     */
+    public Game(Board board, Player first, Player second) {
+        this.board = board;
+        this.players = new Player[] {first, second};
+        start();
+    }
+
+    /** Register the given listener. */
+    public void setResultListener(ResultListener listener) {
+        this.resultListener = listener;
+    }
+
+    /** Start the game again by clearing the board. The first player
+     * has the turn. */
+    public void start() {
+        board.clear();
+        turn = 0;
+        isOver = false;
+        winner = null;
+        startTime = System.currentTimeMillis();
+        endTime = 0;
+    }
+
+    /** Return the board of this game. */
+    public Board board() {
+        return board;
+    }
+
+    /** Return the player of the given 0-based index; the first player
+     * moves first. */
+    public Player player(int i) {
+        return players[i];
+    }
+
+    /** Return the player who has the turn. */
+    public Player currentPlayer() {
+        return players[turn];
+    }
+
+    /** Return the player who doesn't have the turn. */
+    public Player opponent() {
+        return players[turn ^ 1];
+    }
+
+    /** Is the game over? */
+    public boolean isOver() {
+        return isOver;
+    }
+
+    /** Is the game over without a winner? */
+    public boolean isDraw() {
+        return isOver && winner == null;
+    }
+
+    /** Return the player who won the game; null if none. */
+    public Player winner() {
+        return winner;
+    }
+
+    /** Return the System.currentTimeMillis() when the game was started. */
+    public long startTime() {
+        return startTime;
+    }
+
+    /** Return the System.currentTimeMillis() when the game ended; 
+     * 0 if it isn't over. */
+    public long endTime() {
+        return endTime;
+    }
+
+    /**
+     * Drop a checker of the current player in the given slot. If the
+     * move ends the game, the result listener is notified; otherwise, 
+     * the turn changes.
+     *
+     * @throws IllegalStateException if the game is over
+     * @throws IllegalArgumentException if the slot isn't open
+     */
+    public void play(int slot) {
+        if (isOver) {
+            throw new IllegalStateException("Game is over.");
+        }
+        if (slot < 0 || slot >= board.numOfSlots() || !board.isSlotOpen(slot)) {
+            throw new IllegalArgumentException("Slot not open: " + slot);
+        }
+        int y = board.dropInSlot(slot, players[turn]);
+        if (board.lastMoveWins(slot, y)) {
+            winner = players[turn];
+            endGame();
+        } else if (board.isFull()) {
+            endGame();
+        } else {
+            turn ^= 1;
+        }
+    }
+
+    /**
+     * Take back the last move and return its slot index; -1 if no move
+     * has been made. The player of the move has the turn again, and
+     * the game, if ended by the move, is in progress again. The result
+     * listener isn't notified.
+     */
+    public int undo() {
+        int slot = board.undo();
+        if (slot >= 0) {
+            board.publishSnapshot();
+            if (isOver) {
+                isOver = false;
+                winner = null;
+                endTime = 0;
+            } else {
+                turn ^= 1;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Play the rest of the game by asking the given move providers for
+     * the moves of the first and the second players, respectively,
+     * and return the winner; null for a draw.
+     */
+    public Player playOut(MoveProvider first, MoveProvider second) {
+        while (!isOver) {
+            play((turn == 0 ? first : second).move(board));
+        }
+        return winner;
+    }
+
+    /** End the game and notify the result listener. */
+    private void endGame() {
+        isOver = true;
+        endTime = System.currentTimeMillis();
+        if (resultListener != null) {
+            resultListener.gameOver(this);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package c4.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import c4.model.Player;
+
+/**
+ * An append-only log of {@link GameRecord}s stored in a directory.
+ * Records are numbered from 0 in the order appended and written to
+ * segment files of bounded size; a new segment is started when the
+ * current one is full. A segment <code>n.log</code>, where n is the
+ * 20-digit number of its first record, holds records framed by their
+ * size (a short) and CRC-32 checksum (an int). Its index
+ * <code>n.idx</code> holds the offset of each record in the segment
+ * as an int. Player names are kept in <code>players.txt</code>, one
+ * per line, and a player's id is the index of its line.
+ *
+ * Writes are buffered, so records appended since the last
+ * {@link #flush()} may be lost in a crash, but the log stays
+ * readable: when a log is opened, the last segment is scanned,
+ * a torn or corrupt record at its end is cut off, and its index is
+ * rebuilt. A log is written by one process at a time and may be read
+ * by any number of {@link GameLogReader}s.
+ *
+ * A log may be used as the result listener of games, recording each
+ * game when it is over. All methods are thread-safe.
+ */
+public class GameLog implements Game.ResultListener, Closeable {
+
+    /** Default size of a segment in bytes, at which a new one is started. */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+    /** Size of the frame of a record in a segment in bytes. */
+    static final int FRAME_SIZE = Short.BYTES + Integer.BYTES;
+
+    /** File name of the player names. */
+    static final String PLAYERS = "players.txt";
+
+    /** Size of the write buffers in bytes. */
+    private static final int BUFFER_SIZE = 64 << 10;
+
+    /** Directory of this log. */
+    private final Path dir;
+
+    /** Size of a segment at which a new one is started. */
+    private final long segmentSize;
+
+    /** Names of the players, indexed by their ids. */
+    private final List<String> players = new ArrayList<>();
+
+    /** Ids of the players, by name. */
+    private final Map<String, Integer> playerIds = new HashMap<>();
+
+    /** Number of the first record of the current segment. */
+    private long base;
+
+    /** Number of records in the current segment. */
+    private int count;
+
+    /** Size of the current segment, including buffered bytes. */
+    private long position;
+
+    /** Current segment and its index. */
+    private FileChannel segment, index;
+
+    /** Buffered bytes of the current segment and its index. */
+    private final ByteBuffer segmentBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** Checksum of records being appended. */
+    private final CRC32 crc = new CRC32();
+
+    /** Open or create the log in the given directory with segments
+     * of the default size. */
+    public GameLog(Path dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open or create the log in the given directory, starting a new
+     * segment when one reaches the given size in bytes. A torn record
+     * at the end of the log, left by a crash, is removed.
+     */
+    public GameLog(Path dir, long segmentSize) throws IOException {
+        if (segmentSize < BUFFER_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Invalid segment size: " + segmentSize);
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(dir);
+        loadPlayers();
+        List<Long> bases = segmentBases(dir);
+        if (bases.isEmpty()) {
+            openSegment(0);
+        } else {
+            recover(bases.get(bases.size() - 1));
+        }
+    }
+
+    /** Return the numbers of the first records of the segments in the
+     * given directory in ascending order. */
+    static List<Long> segmentBases(Path dir) throws IOException {
+        List<Long> bases = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+                "*.log")) {
+            for (Path file: files) {
+                String name = file.getFileName().toString();
+                try {
+                    bases.add(Long.parseLong(
+                            name.substring(0, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        Collections.sort(bases);
+        return bases;
+    }
+
+    /** Return the segment file of the given first record. */
+    static Path segmentFile(Path dir, long base) {
+        return dir.resolve(String.format("%020d.log", base));
+    }
+
+    /** Return the index file of the segment of the given first record. */
+    static Path indexFile(Path dir, long base) {
+        return dir.resolve(String.format("%020d.idx", base));
+    }
+
+    /**
+     * Read the player names, dropping a line torn by a crash.
+     */
+    private void loadPlayers() throws IOException {
+        Path file = dir.resolve(PLAYERS);
+        if (!Files.exists(file)) {
+            return;
+        }
+        String text = new String(Files.readAllBytes(file),
+                StandardCharsets.UTF_8);
+        int end = text.lastIndexOf('\n') + 1;
+        for (int i = 0; i < end; ) {
+            int j = text.indexOf('\n', i);
+            addPlayer(text.substring(i, j));
+            i = j + 1;
+        }
+        if (end < text.length()) {
+            Files.write(file, text.substring(0, end).getBytes(
+                    StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Register the given player name, returning its id. */
+    private int addPlayer(String name) {
+        int id = players.size();
+        players.add(name);
+        playerIds.put(name, id);
+        return id;
+    }
+
+    /**
+     * Scan the segment of the given first record, cutting it off after
+     * its last intact record, and rebuild its index.
+     */
+    private void recover(long base) throws IOException {
+        Path file = segmentFile(dir, base);
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        ByteBuffer offsets = ByteBuffer.allocate(
+                data.capacity() / FRAME_SIZE * Integer.BYTES + Integer.BYTES);
+        int end = 0;
+        int n = 0;
+        while (true) {
+            int size = frameSize(data, end);
+            if (size < 0) {
+                break;
+            }
+            offsets.putInt(end);
+            end += FRAME_SIZE + size;
+            n++;
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            channel.truncate(end);
+        }
+        offsets.flip();
+        try (FileChannel channel = FileChannel.open(indexFile(dir, base),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (offsets.hasRemaining()) {
+                channel.write(offsets);
+            }
+        }
+        openSegment(base);
+        count = n;
+        position = end;
+    }
+
+    /**
+     * Return the size of the record framed at the given offset of the
+     * given segment data; -1 if there is no intact record.
+     */
+    static int frameSize(ByteBuffer data, int offset) {
+        if (offset + FRAME_SIZE > data.limit()) {
+            return -1;
+        }
+        int size = data.getShort(offset) & 0xFFFF;
+        int start = offset + FRAME_SIZE;
+        if (size == 0 || start + size > data.limit()) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer record = data.duplicate();
+        record.limit(start + size).position(start);
+        crc.update(record);
+        return (int) crc.getValue() == data.getInt(offset + Short.BYTES)
+                ? size : -1;
+    }
+
+    /** Open the segment of the given first record for appending. */
+    private void openSegment(long base) throws IOException {
+        this.base = base;
+        count = 0;
+        position = 0;
+        segment = FileChannel.open(segmentFile(dir, base),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        index = FileChannel.open(indexFile(dir, base),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /** Return the directory of this log. */
+    public Path directory() {
+        return dir;
+    }
+
+    /** Return the number of records in this log. */
+    public synchronized long size() {
+        return base + count;
+    }
+
+    /**
+     * Return the id of the player of the given name, registering the
+     * name if it is new. A new name is written out at once, so that
+     * records referring to it are never read without it.
+     */
+    public synchronized int playerId(String name) throws IOException {
+        name = name.replace('\n', ' ');
+        Integer id = playerIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        Files.write(dir.resolve(PLAYERS),
+                (name + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return addPlayer(name);
+    }
+
+    /** Return the names of the players, indexed by their ids. */
+    public synchronized List<String> players() {
+        return new ArrayList<>(players);
+    }
+
+    /**
+     * Append a record of the given game, over or not, and return its
+     * number. The players are identified by their names.
+     */
+    public long append(Game game) throws IOException {
+        Player first = game.player(0);
+        GameRecord.Result result = !game.isOver()
+                ? GameRecord.Result.UNFINISHED
+                : (game.winner() == null ? GameRecord.Result.DRAW
+                        : (game.winner() == first
+                                ? GameRecord.Result.FIRST_WINS
+                                : GameRecord.Result.SECOND_WINS));
+        return append(new GameRecord(game.board(), result,
+                playerId(first.name()), playerId(game.player(1).name()),
+                game.startTime(), game.isOver() ? game.endTime()
+                        : System.currentTimeMillis()));
+    }
+
+    /** Append the given record and return its number. */
+    public synchronized long append(GameRecord record) throws IOException {
+        if (segment == null) {
+            throw new IllegalStateException("Log is closed: " + dir);
+        }
+        int size = record.encodedSize();
+        if (position + FRAME_SIZE + size > segmentSize) {
+            roll();
+        }
+        if (segmentBuffer.remaining() < FRAME_SIZE + size) {
+            flushBuffer(segmentBuffer, segment);
+        }
+        int start = segmentBuffer.position();
+        segmentBuffer.position(start + FRAME_SIZE);
+        record.encode(segmentBuffer);
+        ByteBuffer encoded = segmentBuffer.duplicate();
+        encoded.limit(encoded.position()).position(start + FRAME_SIZE);
+        crc.reset();
+        crc.update(encoded);
+        segmentBuffer.putShort(start, (short) size);
+        segmentBuffer.putInt(start + Short.BYTES, (int) crc.getValue());
+        if (!indexBuffer.hasRemaining()) {
+            // an index entry must never be written before its record
+            flushBuffer(segmentBuffer, segment);
+            flushBuffer(indexBuffer, index);
+        }
+        indexBuffer.putInt((int) position);
+        position += FRAME_SIZE + size;
+        return base + count++;
+    }
+
+    /** Seal the current segment and start a new one. */
+    private void roll() throws IOException {
+        sync();
+        segment.close();
+        index.close();
+        openSegment(base + count);
+    }
+
+    /** Write out the given buffered bytes to the given channel. */
+    private static void flushBuffer(ByteBuffer buffer, FileChannel channel)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write out the buffered records, so that readers opened from now
+     * on see them.
+     */
+    public synchronized void flush() throws IOException {
+        if (segment != null) {
+            flushBuffer(segmentBuffer, segment);
+            flushBuffer(indexBuffer, index);
+        }
+    }
+
+    /** Write out the buffered records and force them to the disk. */
+    public synchronized void sync() throws IOException {
+        if (segment != null) {
+            flush();
+            segment.force(false);
+            index.force(false);
+        }
+    }
+
+    /** Record the given game, which is over. */
+    @Override
+    public void gameOver(Game game) {
+        try {
+            append(game);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Flush and close this log. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (segment != null) {
+            try {
+                sync();
+            } finally {
+                segment.close();
+                index.close();
+                segment = null;
+                index = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package c4.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A reader of the records of a {@link GameLog}. The segments and
+ * indexes of the log are mapped into memory read-only, so records
+ * are read without copying files and scanned at the speed of memory.
+ * A reader sees the records written out when it was opened; records
+ * appended later are seen after {@link #refresh()}, which maps again
+ * only the last segment, the one being appended to.
+ *
+ * Usage: <code>GameLogReader dir [first [count]]</code>, which prints
+ * records, one per line, as their number, players, result and moves.
+ */
+public class GameLogReader {
+
+    /** Directory of the log. */
+    private final Path dir;
+
+    /** Mapped segments, in the order of their records. */
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /** Mapped indexes of the segments. */
+    private MappedByteBuffer[] indexes = new MappedByteBuffer[0];
+
+    /** Numbers of the first records of the segments, followed by the
+     * number of records. */
+    private long[] bases = new long[1];
+
+    /** Names of the players, indexed by their ids. */
+    private final List<String> players = new ArrayList<>();
+
+    /** Size of the file of the players when last read. */
+    private long playersSize;
+
+    /** Open the log in the given directory for reading. */
+    public GameLogReader(Path dir) throws IOException {
+        this.dir = dir;
+        refresh();
+    }
+
+    /**
+     * Pick up the records appended to the log since it was opened or
+     * last refreshed, and return true if there are any. Segments other
+     * than the last one are sealed, so those already mapped are kept;
+     * the last segment and its index are mapped again if they have
+     * grown, as is a segment that was the last one until new ones were
+     * started.
+     */
+    public boolean refresh() throws IOException {
+        long oldSize = size();
+        List<Long> segmentBases = GameLog.segmentBases(dir);
+        int n = segmentBases.size();
+        int sealed = 0;
+        while (sealed < Math.min(segments.length - 1, n)
+                && bases[sealed] == segmentBases.get(sealed)) {
+            sealed++;
+        }
+        MappedByteBuffer[] newSegments = Arrays.copyOf(segments, n);
+        MappedByteBuffer[] newIndexes = Arrays.copyOf(indexes, n);
+        long[] newBases = Arrays.copyOf(bases, n + 1);
+        for (int i = sealed; i < n; i++) {
+            long base = segmentBases.get(i);
+            Path segmentFile = GameLog.segmentFile(dir, base);
+            Path indexFile = GameLog.indexFile(dir, base);
+            if (i >= segments.length || bases[i] != base
+                    || Files.size(segmentFile) != segments[i].capacity()
+                    || Files.size(indexFile) != indexes[i].capacity()) {
+                newSegments[i] = map(segmentFile);
+                newIndexes[i] = map(indexFile);
+            }
+            newBases[i] = base;
+            newBases[i + 1] = base + count(newSegments[i], newIndexes[i]);
+        }
+        segments = newSegments;
+        indexes = newIndexes;
+        bases = newBases;
+        Path file = dir.resolve(GameLog.PLAYERS);
+        if (Files.exists(file) && Files.size(file) != playersSize) {
+            byte[] bytes = Files.readAllBytes(file);
+            playersSize = bytes.length;
+            players.clear();
+            for (String name: new String(bytes, 
+                    StandardCharsets.UTF_8).split("\n")) {
+                players.add(name);
+            }
+        }
+        return size() > oldSize;
+    }
+
+    /** Return the number of intact records of the given segment of 
+     * the given index. */
+    private static int count(ByteBuffer segment, ByteBuffer index) {
+        // index entries may be written ahead of a torn segment
+        int count = index.capacity() / Integer.BYTES;
+        while (count > 0 && GameLog.frameSize(segment,
+                index.getInt((count - 1) * Integer.BYTES)) < 0) {
+            count--;
+        }
+        return count;
+    }
+
+    /** Map the given file read-only. */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+    }
+
+    /** Return the number of records of the log. */
+    public long size() {
+        return bases[bases.length - 1];
+    }
+
+    /** Return the name of the player of the given id; null if unknown. */
+    public String playerName(int id) {
+        return id >= 0 && id < players.size() ? players.get(id) : null;
+    }
+
+    /**
+     * Return the record of the given number.
+     *
+     * @throws IndexOutOfBoundsException if there is no such record
+     * @throws IllegalStateException if the record is corrupt
+     */
+    public GameRecord get(long n) {
+        if (n < 0 || n >= size()) {
+            throw new IndexOutOfBoundsException("No record " + n + " of "
+                    + size());
+        }
+        int i = Arrays.binarySearch(bases, 0, segments.length, n);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        // skip empty segments sharing the base
+        while (i + 1 < segments.length && bases[i + 1] <= n) {
+            i++;
+        }
+        int offset = indexes[i].getInt((int) (n - bases[i]) * Integer.BYTES);
+        return read(segments[i], offset, n);
+    }
+
+    /** Read the record of the given number at the given offset of
+     * the given segment. */
+    private static GameRecord read(ByteBuffer segment, int offset, long n) {
+        int size = GameLog.frameSize(segment, offset);
+        if (size < 0) {
+            throw new IllegalStateException("Corrupt record " + n);
+        }
+        ByteBuffer record = segment.duplicate();
+        record.limit(offset + GameLog.FRAME_SIZE + size)
+                .position(offset + GameLog.FRAME_SIZE);
+        return GameRecord.decode(record);
+    }
+
+    /**
+     * Pass the records of the given numbers, from first inclusive to
+     * last exclusive, in order to the given action.
+     */
+    public void forEach(long first, long last, Consumer<GameRecord> action) {
+        for (int i = 0; i < segments.length; i++) {
+            for (long n = Math.max(first, bases[i]);
+                    n < Math.min(last, bases[i + 1]); n++) {
+                int offset = indexes[i].getInt(
+                        (int) (n - bases[i]) * Integer.BYTES);
+                action.accept(read(segments[i], offset, n));
+            }
+        }
+    }
+
+    /** Pass all records in order to the given action. */
+    public void forEach(Consumer<GameRecord> action) {
+        forEach(0, size(), action);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: GameLogReader dir [first [count]]");
+            System.exit(1);
+        }
+        GameLogReader reader = new GameLogReader(Paths.get(args[0]));
+        long first = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        long count = args.length > 2 ? Long.parseLong(args[2])
+                : reader.size() - first;
+        long[] n = {first};
+        reader.forEach(first, Math.min(first + count, reader.size()), r ->
+                System.out.printf("%d %s %s %s %s%n", n[0]++,
+                        reader.playerName(r.firstId()),
+                        reader.playerName(r.secondId()), r.result(),
+                        r.movesString()));
+    }
+}
@@ -0,0 +1,249 @@
+package c4.engine;
+
+import java.nio.ByteBuffer;
+
+import c4.model.Board;
+
+/**
+ * An immutable record of a game: the shape of its board, its moves,
+ * the ids of its players, its result, and when it was played.
+ * A record is encoded in a few bytes, most of which hold the moves
+ * packed at 3 bits per move on a board of up to 8 slots (4 bits
+ * otherwise); a game on a standard board takes 41 bytes at most.
+ *
+ * An encoded record consists of the number of slots, the number of
+ * places in a slot, the length of a winning row, the number of moves
+ * and the result, one byte each; the ids of the first and second
+ * players, an int each; the start time as a long and the duration
+ * in milliseconds as an int; and the packed moves, the first move
+ * in the lowest bits of the first byte.
+ *
+ * @see GameLog
+ */
+public class GameRecord {
+
+    /** Result of a recorded game. */
+    public enum Result {
+        /** The game was abandoned before it was over. */
+        UNFINISHED,
+
+        /** The first player won. */
+        FIRST_WINS,
+
+        /** The second player won. */
+        SECOND_WINS,
+
+        /** The board was filled without a winner. */
+        DRAW
+    }
+
+    /** Size of an encoded record without its moves in bytes. */
+    private static final int FIXED_SIZE = 5 + 2 * Integer.BYTES
+            + Long.BYTES + Integer.BYTES;
+
+    /** Number of slots of the board. */
+    private final int numOfSlots;
+
+    /** Number of places in a slot of the board. */
+    private final int slotHeight;
+
+    /** Length of a winning row of the board. */
+    private final int connect;
+
+    /** Slot indices of the moves, in the order played. */
+    private final byte[] moves;
+
+    /** Result of the game. */
+    private final Result result;
+
+    /** Ids of the first and second players. */
+    private final int firstId, secondId;
+
+    /** System.currentTimeMillis() when the game was started. */
+    private final long startTime;
+
+    /** Duration of the game in milliseconds. */
+    private final int duration;
+
+    /**
+     * Create a new record of a game of the given players, by their ids,
+     * on the given board, which holds the moves of the game.
+     */
+    public GameRecord(Board board, Result result, int firstId, int secondId,
+            long startTime, long endTime) {
+        this(board.numOfSlots(), board.slotHeight(), board.connectLength(),
+                movesOf(board), result, firstId, secondId, startTime,
+                (int) Math.min(Math.max(endTime - startTime, 0),
+                        Integer.MAX_VALUE));
+    }
+
+    /** Create a new record of the given fields. */
+    private GameRecord(int numOfSlots, int slotHeight, int connect,
+            byte[] moves, Result result, int firstId, int secondId,
+            long startTime, int duration) {
+        this.numOfSlots = numOfSlots;
+        this.slotHeight = slotHeight;
+        this.connect = connect;
+        this.moves = moves;
+        this.result = result;
+        this.firstId = firstId;
+        this.secondId = secondId;
+        this.startTime = startTime;
+        this.duration = duration;
+    }
+
+    /** Return the moves held by the given board. */
+    private static byte[] movesOf(Board board) {
+        byte[] moves = new byte[board.numOfMoves()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = (byte) board.moveAt(i);
+        }
+        return moves;
+    }
+
+    /** Return the number of slots of the board of the game. */
+    public int numOfSlots() {
+        return numOfSlots;
+    }
+
+    /** Return the number of places in a slot of the board of the game. */
+    public int slotHeight() {
+        return slotHeight;
+    }
+
+    /** Return the length of a winning row of the board of the game. */
+    public int connectLength() {
+        return connect;
+    }
+
+    /** Return the number of moves of the game. */
+    public int numOfMoves() {
+        return moves.length;
+    }
+
+    /** Return the 0-based slot index of the given 0-based move. */
+    public int moveAt(int i) {
+        return moves[i];
+    }
+
+    /** Return the result of the game. */
+    public Result result() {
+        return result;
+    }
+
+    /** Return the id of the first player. */
+    public int firstId() {
+        return firstId;
+    }
+
+    /** Return the id of the second player. */
+    public int secondId() {
+        return secondId;
+    }
+
+    /** Return the System.currentTimeMillis() when the game was started. */
+    public long startTime() {
+        return startTime;
+    }
+
+    /** Return the System.currentTimeMillis() when the game ended. */
+    public long endTime() {
+        return startTime + duration;
+    }
+
+    /** Return a new board of the shape of the game. */
+    public Board newBoard() {
+        return new Board(numOfSlots, slotHeight, connect);
+    }
+
+    /**
+     * Play the first given number of moves of the game on the given
+     * board, after clearing it, without notifying its change listeners.
+     * The position reached is published as the snapshot of the board.
+     */
+    public void replay(Board board, int numOfMoves) {
+        board.clear();
+        for (int i = 0; i < numOfMoves; i++) {
+            board.play(moves[i]);
+        }
+        board.publishSnapshot();
+    }
+
+    /** Return the moves as a string of 1-based slot indices, e.g., "4453". */
+    public String movesString() {
+        StringBuilder s = new StringBuilder(moves.length);
+        for (byte move: moves) {
+            s.append((char) ('1' + move));
+        }
+        return s.toString();
+    }
+
+    /** Return the number of bits of a move on the board of the game. */
+    private static int bitsPerMove(int numOfSlots) {
+        return numOfSlots <= 8 ? 3 : 4;
+    }
+
+    /** Return the size of the encoding of this record in bytes. */
+    public int encodedSize() {
+        return FIXED_SIZE + (moves.length * bitsPerMove(numOfSlots) + 7) / 8;
+    }
+
+    /** Write the encoding of this record to the given buffer. */
+    public void encode(ByteBuffer out) {
+        out.put((byte) numOfSlots).put((byte) slotHeight).put((byte) connect)
+                .put((byte) moves.length).put((byte) result.ordinal())
+                .putInt(firstId).putInt(secondId)
+                .putLong(startTime).putInt(duration);
+        int bits = bitsPerMove(numOfSlots);
+        int acc = 0;
+        int n = 0;
+        for (byte move: moves) {
+            acc |= move << n;
+            n += bits;
+            if (n >= 8) {
+                out.put((byte) acc);
+                acc >>>= 8;
+                n -= 8;
+            }
+        }
+        if (n > 0) {
+            out.put((byte) acc);
+        }
+    }
+
+    /**
+     * Read a record from the given buffer.
+     *
+     * @throws IllegalArgumentException if the buffer doesn't hold a record
+     */
+    public static GameRecord decode(ByteBuffer in) {
+        int numOfSlots = in.get() & 0xFF;
+        int slotHeight = in.get() & 0xFF;
+        int connect = in.get() & 0xFF;
+        byte[] moves = new byte[in.get() & 0xFF];
+        int result = in.get();
+        if (result < 0 || result >= Result.values().length
+                || moves.length > numOfSlots * slotHeight) {
+            throw new IllegalArgumentException("Not a game record");
+        }
+        int firstId = in.getInt();
+        int secondId = in.getInt();
+        long startTime = in.getLong();
+        int duration = in.getInt();
+        int bits = bitsPerMove(numOfSlots);
+        int acc = 0;
+        int n = 0;
+        for (int i = 0; i < moves.length; i++) {
+            if (n < bits) {
+                acc |= (in.get() & 0xFF) << n;
+                n += 8;
+            }
+            moves[i] = (byte) (acc & ((1 << bits) - 1));
+            acc >>>= bits;
+            n -= bits;
+        }
+        return new GameRecord(numOfSlots, slotHeight, connect, moves,
+                Result.values()[result], firstId, secondId, startTime,
+                duration);
+    }
+}
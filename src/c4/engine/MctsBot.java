@@ -0,0 +1,87 @@
+package c4.engine;
+
+import c4.model.Board;
+import c4.search.ParallelMcts;
+
+/**
+ * A computer player choosing its moves by Monte Carlo tree search.
+ * Its strength grows with its budget, either a number of playouts 
+ * per move or a time limit. The search tree is reused from move to 
+ * move within a game when searching independent trees.
+ *
+ * @see c4.search.Mcts
+ * @see c4.search.ParallelMcts
+ */
+public class MctsBot extends Ai {
+
+    /** Default number of playouts per move. */
+    public static final int DEFAULT_PLAYOUTS = 20000;
+
+    /** Number of nodes of a search tree at most. */
+    private static final int CAPACITY = 1 << 19;
+
+    /** Search engine. */
+    private final ParallelMcts mcts;
+
+    /** Number of playouts per move, shared by all threads. */
+    private final int playouts;
+
+    /** Time limit of a move in milliseconds; 0 for no limit. */
+    private long timeLimit;
+
+    /** Create a new bot of the default number of playouts per move. */
+    public MctsBot() {
+        this(DEFAULT_PLAYOUTS);
+    }
+
+    /** Create a new bot of the given number of playouts per move. */
+    public MctsBot(int playouts) {
+        this(playouts, 1, ParallelMcts.Mode.ROOT);
+    }
+
+    /** Create a new bot of the given number of playouts per move, and
+     * number of threads sharing them in the given mode. */
+    public MctsBot(int playouts, int threads, ParallelMcts.Mode mode) {
+        if (playouts < 1) {
+            throw new IllegalArgumentException(
+                    "Number of playouts must be positive: " + playouts);
+        }
+        this.playouts = playouts;
+        this.mcts = new ParallelMcts(mode, threads, CAPACITY, System.nanoTime());
+    }
+
+    /** 
+     * Set the time limit of a move in milliseconds; 0 for no limit. 
+     * A move ends when either the time or the playouts run out. 
+     */
+    public void setTimeLimit(long millis) {
+        this.timeLimit = millis;
+    }
+
+    /** Discard the search tree of the previous game. */
+    @Override
+    public void initGame() {
+        mcts.resume();
+        mcts.clear();
+    }
+
+    /** Make the search in progress, if any, return after the playouts
+     * being played, and later ones fail until a new game. */
+    @Override
+    public void stop() {
+        mcts.stop();
+    }
+
+    /** Return the book or solver move, if any, or the most visited move. */
+    @Override
+    public int move(Board board) {
+        int slot = bookMove(board);
+        if (slot < 0) {
+            slot = solverMove(board);
+        }
+        if (slot >= 0) {
+            return slot;
+        }
+        return mcts.bestMove(board, playouts, timeLimit);
+    }
+}
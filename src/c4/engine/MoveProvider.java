@@ -0,0 +1,23 @@
+package c4.engine;
+
+import c4.model.Board;
+
+/**
+ * Provider of the moves of a player, such as a computer player, 
+ * that chooses its moves without user interaction.
+ */
+public interface MoveProvider {
+
+    /**
+     * Return the 0-based index of the slot in which to drop the next
+     * checker of the side to move on the given board, which must have
+     * an open slot. The board may be used for a search but is left 
+     * unchanged.
+     */
+    int move(Board board);
+
+    /** Called when a new game is started. By default, this method 
+     * does nothing. */
+    default void initGame() {
+    }
+}
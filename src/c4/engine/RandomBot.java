@@ -0,0 +1,30 @@
+package c4.engine;
+
+import java.util.Random;
+
+import c4.model.Board;
+
+/** A computer player dropping its checkers in random open slots. */
+public class RandomBot extends Ai {
+
+    /** Source of the random moves. */
+    private final Random random = new Random();
+
+    /** Return a slot chosen uniformly among the open slots. */
+    @Override
+    public int move(Board board) {
+        int open = 0;
+        for (int i = 0; i < board.numOfSlots(); i++) {
+            if (board.isSlotOpen(i)) {
+                open++;
+            }
+        }
+        int k = random.nextInt(open);
+        for (int i = 0; i < board.numOfSlots(); i++) {
+            if (board.isSlotOpen(i) && k-- == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
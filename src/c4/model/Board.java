@@ -2,27 +2,72 @@ package c4.model;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import c4.model.Player;
 
 /**
- * Abstraction of a Connect Four game board. A game board consists 
- * of seven slots (columns), and each slot has six places where a
- * player's checker can be placed by dropping it in the slot. 
+ * Abstraction of a Connect Four game board. A standard game board 
+ * consists of seven slots (columns), and each slot has six places 
+ * where a player's checker can be placed by dropping it in the slot;
+ * a player wins by lining up four checkers. Boards of other numbers
+ * of slots and places and other lengths of winning rows may also be 
+ * created.
  * A place of a board is denoted by a pair of a slot (column) index
  * and a place (row) index; both are 0-based.
  * The slot index increases to the right, and the row index increases
  * to the bottom.
- * Thus, the top left place of a board is denoted by (0, 0) and
- * the bottom right place by (6, 5).
+ * Thus, the top left place of a standard board is denoted by (0, 0) 
+ * and the bottom right place by (6, 5).
  */
 public class Board {
 
-    /** Number of slots (columns). */
-    private static int NUM_OF_SLOTS = 7;
+    /** Number of slots (columns) of a standard board. */
+    public static final int NUM_OF_SLOTS = 7;
     
-    /** Number of places (rows) in each slot. */
-    private static int SLOT_HEIGHT = 6;
+    /** Number of places (rows) in each slot of a standard board. */
+    public static final int SLOT_HEIGHT = 6;
+
+    /** Length of a winning row of a standard board. */
+    public static final int CONNECT = 4;
+    
+    /** Largest number of slots, and of places in a slot, of a board. */
+    public static final int MAX_SIZE = 15;
+    
+    /** 
+     * Zobrist keys of a checker of each side (first index) at each 
+     * bitboard place (second index) of any board. 
+     */
+    private static final long[][] ZOBRIST_KEYS = 
+            new long[2][MAX_SIZE * (MAX_SIZE + 1)];
+    
+    /** Zobrist key of the second side being the side to move. */
+    private static final long ZOBRIST_TURN;
+    
+    /** 
+     * Zobrist keys of the number of slots, the slot height and the 
+     * length of a winning row (first index) of each value (second
+     * index). The keys of the shape of a board are part of its hashes,
+     * so that a position hashes differently on boards of different 
+     * shapes, even though its checkers take the same bits.
+     */
+    private static final long[][] ZOBRIST_SHAPE = new long[3][MAX_SIZE + 1];
+    
+    static {
+        Random random = new Random(0); // fixed seed; reproducible hashes
+        for (int side = 0; side < 2; side++) {
+            long[] keys = ZOBRIST_KEYS[side];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextLong();
+            }
+        }
+        ZOBRIST_TURN = random.nextLong();
+        for (long[] keys: ZOBRIST_SHAPE) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextLong();
+            }
+        }
+    }
 
     /** Provided interface to notify a change made on this board. */
     public interface ChangeListener {
@@ -32,44 +77,293 @@ public class Board {
         void checkerDropped(int slot, int y, Player player);
     }
     
-    /** Places of this board. Stored are the players who own the 
-     * checkers placed on them; null if no checker is placed. */
-    private Player[][] places;
+    /** Number of slots (columns). */
+    private final int numOfSlots;
+    
+    /** Number of places (rows) in each slot. */
+    private final int slotHeight;
+    
+    /** Length of a winning row. */
+    private final int connect;
+
+    /** 
+     * Number of bits used for each slot in a bitboard. A slot takes
+     * one extra bit on top of its places so that shifted rows never
+     * wrap into the next slot. 
+     */
+    private final int slotBits;
+
+    /** Bitboard of the top place of every slot. */
+    private final long topMask;
+    
+    /** Bitboard of all places. */
+    private final long boardMask;
+    
+    /** 
+     * Zobrist keys of a checker of each side (first index) at the 
+     * left-right mirror image of each bitboard place (second index);
+     * shared by copies of this board. 
+     */
+    private final long[][] mirrorKeys;
+    
+    /** 
+     * Places of this board are stored as two bitboards. Bit 
+     * <code>slot * slotBits + row</code> denotes a place, where the 
+     * row is counted from the bottom of the slot (i.e., row = 
+     * slotHeight - 1 - y). This one holds the checkers of the side 
+     * to move. Unused if the bitboards take more than 64 bits.
+     */
+    private long current;
+    
+    /** Bitboard of all occupied places. */
+    private long mask;
+    
+    /** 
+     * Is this a standard board? Win checks of a standard board pass 
+     * its dimensions as constants to the same helper methods, so that
+     * the compiled code inlining them is specialized to constant shifts.
+     */
+    private final boolean standard;
+    
+    /** Bitboards of a board taking more than 64 bits; null otherwise. 
+     * All bitboard operations take this slower path if it is set. */
+    private final WideBitboard wide;
+    
+    /** Number of checkers stacked from the bottom of each slot. */
+    private final int[] heights;
+    
+    /** Players owning the two sides, registered in the order of 
+     * their first drops; null if not yet known. */
+    private final Player[] sides = new Player[2];
+    
+    /** Index (into sides) of the side to move. */
+    private int turn;
+    
+    /** Slots of the checkers dropped so far, in the order of drops. */
+    private final int[] moves;
+    
+    /** Number of checkers dropped so far. */
+    private int numOfMoves;
+    
+    /** Zobrist key of the shape of this board; the hashes of the 
+     * empty board. */
+    private final long shapeKey;
+    
+    /** Zobrist hash of the current position, updated on each change. */
+    private long hash;
+    
+    /** Zobrist hash of the mirror image of the current position. */
+    private long mirrorHash;
 
-    /** Observe state changes of this board. */
-    private ChangeListener changeListener;
+    /** Subscribers of the changes of this board; null until requested,
+     * so that drops cost nothing more if nobody listens. */
+    private BoardEvents events;
+    
+    /** Subscription of the listener set by setChangeListener; null if none. */
+    private BoardEvents.Subscription changeListener;
+    
+    /** First bit of the winning row found by the last win check; 
+     * -1 if no winning row has been found. */
+    private int winStart = -1;
     
-    /** Winning row of places. */
+    /** Shift between the bits of the winning row, if found. */
+    private int winShift;
+    
+    /** Winning row of places, created from winStart on demand. */
     private List<Place> winningRow = new ArrayList<>();
 
-    /** Create a new board. */
+    /** Snapshot of the position last published; read on any thread. */
+    private volatile BoardSnapshot snapshot;
+
+    /** Create a new standard board. */
     public Board() {
-        places = new Player[NUM_OF_SLOTS][SLOT_HEIGHT];
+        this(NUM_OF_SLOTS, SLOT_HEIGHT, CONNECT);
     }
     
-    /** Register the given listener. */
+    /**
+     * Create a new board of the given numbers of slots and places in
+     * each slot, won by lining up the given number of checkers. Boards
+     * of up to 64 bits, e.g., 8x7 or 9x6, are stored in single-word 
+     * bitboards; larger ones, e.g., 9x7, in slower multi-word ones.
+     *
+     * @throws IllegalArgumentException if a dimension isn't between 1 
+     *         and {@link #MAX_SIZE} or the length of a winning row 
+     *         isn't between 2 and the larger dimension
+     */
+    public Board(int numOfSlots, int slotHeight, int connect) {
+        if (numOfSlots < 1 || numOfSlots > MAX_SIZE 
+                || slotHeight < 1 || slotHeight > MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid board size: " 
+                    + numOfSlots + "x" + slotHeight);
+        }
+        if (connect < 2 || connect > Math.max(numOfSlots, slotHeight)) {
+            throw new IllegalArgumentException(
+                    "Invalid length of a winning row: " + connect);
+        }
+        this.numOfSlots = numOfSlots;
+        this.slotHeight = slotHeight;
+        this.connect = connect;
+        slotBits = slotHeight + 1;
+        standard = isStandard();
+        if (numOfSlots * slotBits <= 64) {
+            long bottom = 0;
+            for (int i = 0; i < numOfSlots; i++) {
+                bottom |= 1L << (i * slotBits);
+            }
+            topMask = bottom << (slotHeight - 1);
+            boardMask = bottom * ((1L << slotHeight) - 1);
+            wide = null;
+        } else {
+            topMask = boardMask = 0;
+            wide = new WideBitboard(numOfSlots, slotHeight, connect);
+        }
+        mirrorKeys = new long[2][numOfSlots * slotBits];
+        for (int side = 0; side < 2; side++) {
+            for (int i = 0; i < mirrorKeys[side].length; i++) {
+                int slot = numOfSlots - 1 - i / slotBits;
+                mirrorKeys[side][i] = 
+                        ZOBRIST_KEYS[side][slot * slotBits + i % slotBits];
+            }
+        }
+        heights = new int[numOfSlots];
+        moves = new int[numOfSlots * slotHeight];
+        shapeKey = ZOBRIST_SHAPE[0][numOfSlots] 
+                ^ ZOBRIST_SHAPE[1][slotHeight] ^ ZOBRIST_SHAPE[2][connect];
+        hash = shapeKey;
+        mirrorHash = shapeKey;
+        publishSnapshot();
+    }
+    
+    /** 
+     * Create a new board with the same checkers, players and move 
+     * history as the given board. The change listeners aren't copied. 
+     */
+    public Board(Board other) {
+        numOfSlots = other.numOfSlots;
+        slotHeight = other.slotHeight;
+        connect = other.connect;
+        slotBits = other.slotBits;
+        standard = other.standard;
+        topMask = other.topMask;
+        boardMask = other.boardMask;
+        mirrorKeys = other.mirrorKeys;
+        current = other.current;
+        mask = other.mask;
+        wide = other.wide == null ? null : new WideBitboard(other.wide);
+        heights = other.heights.clone();
+        moves = new int[other.moves.length];
+        sides[0] = other.sides[0];
+        sides[1] = other.sides[1];
+        turn = other.turn;
+        System.arraycopy(other.moves, 0, moves, 0, other.numOfMoves);
+        numOfMoves = other.numOfMoves;
+        shapeKey = other.shapeKey;
+        hash = other.hash;
+        mirrorHash = other.mirrorHash;
+        winStart = other.winStart;
+        winShift = other.winShift;
+        publishSnapshot();
+    }
+    
+    /** 
+     * Register the given listener to be notified of each drop 
+     * synchronously, replacing the one registered by this method
+     * before; null for none. Other listeners may be subscribed to 
+     * {@link #events()}.
+     */
     public void setChangeListener(ChangeListener listener) {
-        this.changeListener = listener;
+        if (changeListener != null) {
+            changeListener.cancel();
+            changeListener = null;
+        }
+        if (listener != null) {
+            changeListener = events().subscribe(listener);
+        }
     }
     
-    /** Clear this board by removing all checkers. */
+    /** 
+     * Return the subscribers of the changes of this board, creating 
+     * them if needed. This method is called on the thread changing the
+     * board; the returned object may be used on any thread.
+     */
+    public BoardEvents events() {
+        if (events == null) {
+            events = new BoardEvents();
+        }
+        return events;
+    }
+    
+    /** Clear this board by removing all checkers. Partial batches of
+     * the batched listeners are delivered first. */
     public void clear() {
+        if (events != null) {
+            events.flush();
+        }
+        winStart = -1;
         winningRow.clear();
-        for (int i = 0; i < NUM_OF_SLOTS; i++) {
-            for (int j = 0; j < SLOT_HEIGHT; j++) {
-                places[i][j] = null;
-            }
+        current = 0;
+        mask = 0;
+        if (wide != null) {
+            wide.clear();
+        }
+        turn = 0;
+        numOfMoves = 0;
+        hash = shapeKey;
+        mirrorHash = shapeKey;
+        sides[0] = sides[1] = null;
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = 0;
         }
+        publishSnapshot();
+    }
+
+    /**
+     * Return an immutable snapshot of the position of this board as
+     * last published, i.e., as of the last drop or clear, or of the
+     * last call of {@link #publishSnapshot()}. Moves made and taken
+     * back by {@link #play(int)} and {@link #undo()} since then aren't
+     * seen. Unlike other methods of this board, this one may be called
+     * on any thread, without locking, while the board is being changed.
+     */
+    public BoardSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publish the current position as the snapshot of this board. This
+     * method is called on the thread changing the board after changing
+     * it by methods other than {@link #dropInSlot(int, Player)} or 
+     * {@link #clear()}, e.g., after taking back a move for good.
+     */
+    public void publishSnapshot() {
+        snapshot = new BoardSnapshot(numOfSlots, slotHeight, connect,
+                current, mask, 
+                wide == null ? null : wide.copyOfCurrent(),
+                wide == null ? null : wide.copyOfMask(),
+                sides[turn], sides[turn ^ 1], numOfMoves,
+                numOfMoves == 0 ? -1 : moves[numOfMoves - 1], hash,
+                winStart, winShift);
     }
     
     /** Return the number of slots (columns) in this board. */
     public int numOfSlots() {
-        return NUM_OF_SLOTS;
+        return numOfSlots;
     }
     
     /** Return the height of slots in this board. */
     public int slotHeight() {
-        return SLOT_HEIGHT;
+        return slotHeight;
+    }
+    
+    /** Return the number of checkers to line up to win on this board. */
+    public int connectLength() {
+        return connect;
+    }
+    
+    /** Is this a standard 7x6 connect-four board? */
+    public boolean isStandard() {
+        return numOfSlots == NUM_OF_SLOTS && slotHeight == SLOT_HEIGHT 
+                && connect == CONNECT;
     }
     
     /** 
@@ -78,7 +372,10 @@ public class Board {
      * @param i 0-based slot index
      */
     public boolean isSlotOpen(int i) {
-        return places[i][0] == null;
+        if (wide != null) {
+            return !wide.isOccupied(i * slotBits + slotHeight - 1);
+        }
+        return (mask & topBit(i)) == 0;
     }
     
     /** 
@@ -87,18 +384,21 @@ public class Board {
      * @param i 0-based slot index
      */
     public boolean isSlotFull(int i) {
-        return places[i][0] != null;
+        return !isSlotOpen(i);
     }
 
     
     /** Are all places occupied? */
     public boolean isFull() {
-        for (int i = 0; i < NUM_OF_SLOTS; i++) {
-            if (isSlotOpen(i)) {
-                return false;
+        if (wide != null) {
+            for (int i = 0; i < numOfSlots; i++) {
+                if (isSlotOpen(i)) {
+                    return false;
+                }
             }
+            return true;
         }
-        return true;
+        return (mask & topMask) == topMask;
     }
 
     /**
@@ -109,18 +409,257 @@ public class Board {
      *
      * @param slot 0-based slot index
      * @param player Player whose checker is to be dropped
+     * @throws IllegalArgumentException if two other players have
+     *         already dropped checkers on this board
      */
     public int dropInSlot(int slot, Player player) {
-        for (int y = SLOT_HEIGHT - 1; y >= 0; y--) {
-            if (places[slot][y] == null) {
-                places[slot][y] = player;
-                if (changeListener != null) {
-                    changeListener.checkerDropped(slot, y, player);
-                }
-                return y;
+        int row = heights[slot];
+        if (row >= slotHeight) {
+            return -1;
+        }
+        int side = sideOf(player);
+        if (side != turn) {
+            // the same player drops again; switch the point of view
+            current ^= mask;
+            if (wide != null) {
+                wide.flip();
+            }
+            turn = side;
+            hash ^= ZOBRIST_TURN;
+            mirrorHash ^= ZOBRIST_TURN;
+        }
+        int y = play(slot);
+        lastMoveWins(slot, y); // marks the winning row of the snapshot
+        publishSnapshot();
+        if (events != null) {
+            events.checkerDropped(slot, y, player);
+        }
+        return y;
+    }
+    
+    /**
+     * Slide a checker of the side to move in the specified slot
+     * and return the place (row) index of the placed checker.
+     * If the given slot is full, this method has no effect and
+     * a -1 is returned. Unlike {@link #dropInSlot(int, Player)}, 
+     * this method doesn't notify the change listeners; it is meant 
+     * for searches that make and take back moves with {@link #undo()}
+     * on a single board without copying it.
+     *
+     * @param slot 0-based slot index
+     */
+    public int play(int slot) {
+        int row = heights[slot];
+        if (row >= slotHeight) {
+            return -1;
+        }
+        int i = slot * slotBits + row;
+        if (wide != null) {
+            wide.play(i);
+        } else {
+            current ^= mask;
+            mask |= 1L << i;
+        }
+        hash ^= ZOBRIST_KEYS[turn][i] ^ ZOBRIST_TURN;
+        mirrorHash ^= mirrorKeys[turn][i] ^ ZOBRIST_TURN;
+        turn ^= 1;
+        moves[numOfMoves++] = slot;
+        raiseHeight(slot);
+        return slotHeight - 1 - row;
+    }
+    
+    /**
+     * Play the given sequence of moves by calling {@link #play(int)} 
+     * for each of its characters. Each character is a 1-based slot 
+     * index, e.g., "4453" drops two checkers in the center slot 
+     * followed by one in the fifth and one in the third slot.
+     *
+     * @throws IllegalArgumentException if a character doesn't denote 
+     *         a slot or the denoted slot is full
+     */
+    public void play(String moves) {
+        for (int i = 0; i < moves.length(); i++) {
+            int slot = moves.charAt(i) - '1';
+            if (slot < 0 || slot >= numOfSlots || isSlotFull(slot)) {
+                throw new IllegalArgumentException(
+                        "Invalid move at " + i + ": " + moves);
             }
+            play(slot);
         }
-        return -1;
+    }
+    
+    /**
+     * Take back the last checker dropped, by either this method or
+     * {@link #dropInSlot(int, Player)}, and return its slot index; 
+     * -1 if no checker has been dropped. The player of the checker
+     * becomes the side to move, and the winning row is forgotten if 
+     * the checker was part of it. The change listeners aren't notified.
+     */
+    public int undo() {
+        if (numOfMoves == 0) {
+            return -1;
+        }
+        int slot = moves[--numOfMoves];
+        int i = slot * slotBits + --heights[slot];
+        if (wide != null) {
+            wide.undo(i);
+        } else {
+            mask &= ~(1L << i);
+            current ^= mask;
+        }
+        turn ^= 1;
+        hash ^= ZOBRIST_KEYS[turn][i] ^ ZOBRIST_TURN;
+        mirrorHash ^= mirrorKeys[turn][i] ^ ZOBRIST_TURN;
+        if (winStart >= 0 && isOnWinningRow(i)) {
+            winStart = -1;
+            winningRow.clear();
+        }
+        return slot;
+    }
+    
+    /** Return the number of checkers dropped since the board was cleared. */
+    public int numOfMoves() {
+        return numOfMoves;
+    }
+    
+    /**
+     * Return the slot index of the checker dropped as the given 0-based
+     * move since the board was cleared.
+     *
+     * @throws IndexOutOfBoundsException if there is no such move
+     */
+    public int moveAt(int i) {
+        if (i < 0 || i >= numOfMoves) {
+            throw new IndexOutOfBoundsException("No move " + i + " of " 
+                    + numOfMoves);
+        }
+        return moves[i];
+    }
+    
+    /**
+     * Return a key uniquely identifying the current position; two 
+     * boards have the same key if and only if they have the same
+     * checkers of the side to move and of the other side. The key is 
+     * the sum of the bitboards of the side to move and the occupied 
+     * places, and takes less than 50 bits on a standard board. On a 
+     * board of more than 64 bits, the key is a 64-bit digest instead,
+     * which other positions may share.
+     */
+    public long key() {
+        if (wide != null) {
+            return wide.key();
+        }
+        return current + mask;
+    }
+    
+    /** 
+     * Return the key of the left-right mirror image of the current
+     * position. 
+     *
+     * @see #key()
+     */
+    public long mirrorKey() {
+        if (wide != null) {
+            return wide.mirrorKey();
+        }
+        return mirror(current + mask, numOfSlots, slotHeight);
+    }
+    
+    /**
+     * Return the left-right mirror image of the given bitboard or key
+     * of a board of up to 64 bits with the given numbers of slots and 
+     * places in each slot.
+     */
+    public static long mirror(long bits, int numOfSlots, int slotHeight) {
+        int slotBits = slotHeight + 1;
+        long slotMask = (1L << slotBits) - 1;
+        long mirror = 0;
+        for (int i = 0, j = numOfSlots - 1; i < j; i++, j--) {
+            int d = (j - i) * slotBits;
+            mirror |= (bits & (slotMask << (i * slotBits))) << d;
+            mirror |= (bits & (slotMask << (j * slotBits))) >>> d;
+        }
+        if (numOfSlots % 2 == 1) {
+            mirror |= bits & (slotMask << (numOfSlots / 2 * slotBits));
+        }
+        return mirror;
+    }
+    
+    /** 
+     * Return the canonical key of the current position, i.e., the 
+     * smaller of the keys of the position and its mirror image. 
+     * A position and its mirror image, which have the same value, 
+     * thus share a single key.
+     */
+    public long canonicalKey() {
+        return Math.min(key(), mirrorKey());
+    }
+    
+    /** 
+     * Return the canonical Zobrist hash of the current position, i.e., 
+     * the smaller of the hashes of the position and its mirror image.
+     * It is updated incrementally like {@link #hash()}.
+     * 
+     * @see #isMirrored()
+     */
+    public long canonicalHash() {
+        return Math.min(hash, mirrorHash);
+    }
+    
+    /** 
+     * Is the canonical hash that of the mirror image of the current
+     * position? If so, moves stored under the canonical hash are to be
+     * mirrored by {@link #mirrorSlot(int)}.
+     */
+    public boolean isMirrored() {
+        return mirrorHash < hash;
+    }
+    
+    /** Return the index of the left-right mirror image of the given slot. */
+    public int mirrorSlot(int slot) {
+        return numOfSlots - 1 - slot;
+    }
+    
+    /**
+     * Return the bitboard of the checkers of the side to move. Bit 
+     * <code>slot * (slotHeight + 1) + row</code> denotes a place, where
+     * the row is counted from the bottom of the slot. Searches that 
+     * work on bitboards directly, such as an exact solver, start from
+     * this and {@link #occupiedBitboard()}.
+     *
+     * @throws IllegalStateException if the board takes more than 64 bits
+     */
+    public long bitboard() {
+        checkNarrow();
+        return current;
+    }
+    
+    /**
+     * Return the bitboard of all occupied places.
+     *
+     * @throws IllegalStateException if the board takes more than 64 bits
+     * @see #bitboard()
+     */
+    public long occupiedBitboard() {
+        checkNarrow();
+        return mask;
+    }
+    
+    /** Throw an exception if this board takes more than 64 bits. */
+    private void checkNarrow() {
+        if (wide != null) {
+            throw new IllegalStateException("Board of more than 64 bits: " 
+                    + numOfSlots + "x" + slotHeight);
+        }
+    }
+    
+    /** 
+     * Return the Zobrist hash of the current position, including the
+     * side to move and the shape of this board. It is updated 
+     * incrementally as checkers are dropped and taken back.
+     */
+    public long hash() {
+        return hash;
     }
     
     /**
@@ -130,7 +669,7 @@ public class Board {
      * @param y 0-based place (row) index
      */
     public boolean isEmpty(int x, int y) {
-        return places[x][y] == null;
+        return !isOccupied(x, y);
     }
 
     /**
@@ -140,7 +679,10 @@ public class Board {
      * @param y 0-based place (row) index
      */
     public boolean isOccupied(int x, int y) {
-        return places[x][y] != null;
+        if (wide != null) {
+            return wide.isOccupied(index(x, y));
+        }
+        return (mask & bit(x, y)) != 0;
     }
     
     /** Is the given place occupied? */
@@ -155,7 +697,7 @@ public class Board {
      * @param y 0-based place (row) index
      */
     public boolean isOccupiedBy(int x, int y, Player player) {
-        return places[x][y] == player;
+        return playerAt(x, y) == player;
     }
     
     /**
@@ -166,78 +708,386 @@ public class Board {
      * @param y 0-based place (row) index
      */
     public Player playerAt(int x, int y) {
-        return places[x][y];
+        if (!isOccupied(x, y)) {
+            return null;
+        }
+        return isCurrent(index(x, y)) ? sides[turn] : sides[turn ^ 1];
     }
    
     /** Return true if the given player has a winning row. */
     public boolean isWonBy(Player player) {
-        for (int i = 0; i < NUM_OF_SLOTS; i++) {
-            for (int j = 0; j < SLOT_HEIGHT; j++) {
-                boolean won = isWonBy(i, j, 1, 0, player); // horizontal
-                won = won || isWonBy(i, j, 0, 1, player);  // vertical
-                won = won || isWonBy(i, j, 1, 1, player);  // diagonal(\)
-                won = won || isWonBy(i, j, 1, -1, player); // diagonal(/)
-                if (won) {
-                    return won;
+        int side = indexOf(player);
+        if (side < 0) {
+            return false;
+        }
+        boolean mover = side == turn;
+        int s = slotBits;
+        if (wide != null) {
+            return markWin(wide.rowStart(mover, 1), 1) 
+                    || markWin(wide.rowStart(mover, s), s)
+                    || markWin(wide.rowStart(mover, s - 1), s - 1)
+                    || markWin(wide.rowStart(mover, s + 1), s + 1);
+        }
+        long stones = mover ? current : current ^ mask;
+        return standard ? hasRow(stones, SLOT_HEIGHT + 1, CONNECT) 
+                : hasRow(stones, s, connect);
+    }
+    
+    /** 
+     * Return true if the given checkers have a row of the given length 
+     * on a board of the given number of bits per slot, remembering the
+     * row as the winning row.
+     */
+    private boolean hasRow(long stones, int s, int n) {
+        return markWin(rowStart(stones, 1, n), 1) 
+                || markWin(rowStart(stones, s, n), s)
+                || markWin(rowStart(stones, s - 1, n), s - 1)
+                || markWin(rowStart(stones, s + 1, n), s + 1);
+    }
+
+    /**
+     * Return true if the checker at the specified place, typically
+     * the one just dropped, completes a winning row for its owner.
+     * Only the rows through the given place are considered, so this
+     * takes constant time and doesn't allocate.
+     *
+     * @param slot 0-based slot (column) index
+     * @param y 0-based place (row) index
+     */
+    public boolean lastMoveWins(int slot, int y) {
+        int i = index(slot, y);
+        int s = slotBits;
+        if (wide != null) {
+            if (!wide.isOccupied(i)) {
+                return false;
+            }
+            boolean mover = wide.isCurrent(i);
+            return markWin(wide.rowStartThrough(mover, i, 1), 1) 
+                    || markWin(wide.rowStartThrough(mover, i, s), s)
+                    || markWin(wide.rowStartThrough(mover, i, s - 1), s - 1)
+                    || markWin(wide.rowStartThrough(mover, i, s + 1), s + 1);
+        }
+        long b = 1L << i;
+        if ((mask & b) == 0) {
+            return false;
+        }
+        long stones = (current & b) != 0 ? current : current ^ mask;
+        return standard ? hasRowThrough(stones, b, SLOT_HEIGHT + 1, CONNECT)
+                : hasRowThrough(stones, b, s, connect);
+    }
+    
+    /** 
+     * Return true if the given checkers have a row of the given length
+     * through the given place on a board of the given number of bits 
+     * per slot, remembering the row as the winning row.
+     */
+    private boolean hasRowThrough(long stones, long place, int s, int n) {
+        return markWin(rowStart(stones, place, 1, n), 1) 
+                || markWin(rowStart(stones, place, s, n), s)
+                || markWin(rowStart(stones, place, s - 1, n), s - 1)
+                || markWin(rowStart(stones, place, s + 1, n), s + 1);
+    }
+
+    /**
+     * Can the side to move win by dropping a checker in the specified
+     * slot? This doesn't change the board.
+     *
+     * @param slot 0-based slot index
+     */
+    public boolean isWinningMove(int slot) {
+        int row = heights[slot];
+        if (row >= slotHeight) {
+            return false;
+        }
+        int i = slot * slotBits + row;
+        if (wide != null) {
+            return wide.rowStartThrough(true, i, 1) >= 0
+                    || wide.rowStartThrough(true, i, slotBits) >= 0
+                    || wide.rowStartThrough(true, i, slotBits - 1) >= 0
+                    || wide.rowStartThrough(true, i, slotBits + 1) >= 0;
+        }
+        return (winningPlaces(current) & (1L << i)) != 0;
+    }
+
+    /**
+     * Return the number of empty places that would complete a winning
+     * row for the side to move, e.g., its open threes.
+     */
+    public int countThreats() {
+        if (wide != null) {
+            return wide.countWinningPlaces(true);
+        }
+        return Long.bitCount(winningPlaces(current));
+    }
+
+    /**
+     * Return the number of empty places that would complete a winning
+     * row for the side not to move, e.g., its open threes.
+     */
+    public int countOpponentThreats() {
+        if (wide != null) {
+            return wide.countWinningPlaces(false);
+        }
+        return Long.bitCount(winningPlaces(current ^ mask));
+    }
+
+    /**
+     * Return the bitboard of the empty places that would complete
+     * a winning row for the given checkers, whether or not the places
+     * can be reached now.
+     */
+    private long winningPlaces(long stones) {
+        long r = standard ? winningPlaces(stones, SLOT_HEIGHT + 1, CONNECT)
+                : winningPlaces(stones, slotBits, connect);
+        return r & (boardMask ^ mask);
+    }
+    
+    /**
+     * Return the bitboard of places that would complete a row of the
+     * given length for the given checkers on a board of up to 64 bits
+     * with the given number of places in each slot, counting both empty
+     * and occupied places as well as those outside the board.
+     *
+     * @see #bitboard()
+     */
+    public static long threats(long stones, int slotHeight, int connect) {
+        return winningPlaces(stones, slotHeight + 1, connect);
+    }
+
+    /** 
+     * Return the bitboard of places that would complete a row of the
+     * given length for the given checkers on a board of the given 
+     * number of bits per slot, counting both empty and occupied places. 
+     */
+    private static long winningPlaces(long stones, int s, int n) {
+        if (n == 4) {
+            // vertical
+            long r = (stones << 1) & (stones << 2) & (stones << 3);
+            r |= winningPlaces(stones, s);     // horizontal
+            r |= winningPlaces(stones, s - 1); // diagonal(\)
+            r |= winningPlaces(stones, s + 1); // diagonal(/)
+            return r;
+        }
+        return winningPlacesInLine(stones, 1, n) 
+                | winningPlacesInLine(stones, s, n)
+                | winningPlacesInLine(stones, s - 1, n) 
+                | winningPlacesInLine(stones, s + 1, n);
+    }
+
+    /**
+     * Return the bitboard of places that would complete a row of four
+     * for the given checkers in the direction denoted by the given
+     * shift, counting both empty and occupied places.
+     */
+    private static long winningPlaces(long stones, int shift) {
+        long p = (stones << shift) & (stones << (2 * shift));
+        long r = p & (stones << (3 * shift));   // xxx.
+        r |= p & (stones >>> shift);            // xx.x
+        p = (stones >>> shift) & (stones >>> (2 * shift));
+        r |= p & (stones << shift);             // x.xx
+        r |= p & (stones >>> (3 * shift));      // .xxx
+        return r;
+    }
+
+    /**
+     * Return the bitboard of places that would complete a row of the
+     * given length for the given checkers in the direction denoted by
+     * the given shift, trying the missing place at each position of
+     * the row.
+     */
+    private static long winningPlacesInLine(long stones, int shift, 
+            int length) {
+        long r = 0;
+        for (int gap = 0; gap < length; gap++) {
+            long p = -1L;
+            for (int k = 0; k < length; k++) {
+                int d = (k - gap) * shift;
+                if (d != 0) {
+                    p &= shiftRight(stones, d);
                 }
             }
+            r |= p;
         }
-        return false;
+        return r;
     }
 
     /** Return the winning row. */
     public Iterable<Place> winningRow() {
+        if (winningRow.isEmpty() && winStart >= 0) {
+            for (int k = 0, i = winStart; k < connect; k++, i += winShift) {
+                winningRow.add(new Place(i / slotBits,
+                        slotHeight - 1 - i % slotBits));
+            }
+        }
         return winningRow;
     }
-    
+
     /** Return true if this board has a winning row. */
     public boolean hasWinningRow() {
-        return !winningRow.isEmpty();
+        return winStart >= 0;
     }
 
-    /** 
-     * Return true if the given player has a winning row containing 
-     * the specified place (x, y) in the specified direction (dx, dy),
-     * where the direction is horizontal (1,0), vertical (0,1),
-     * diagonal \ (1,1), and diagonal / (1, -1).
-     */
-    private boolean isWonBy(int x, int y, int dx, int dy, Player player) {
-        final int FOUR = 4;
-        final int[] row = new int[FOUR]; // winning row, encoded: x*100 + y
-        
-        // check and expand to the left/below of (x, y)
-        int cnt = 0;
-        int sx = x; // start x
-        int sy = y; // start y
-        while (!(dx > 0 && sx < 0) && !(dx < 0 && sx >= NUM_OF_SLOTS) 
-                && !(dy > 0 && sy < 0) && !(dy < 0 && sy >= SLOT_HEIGHT) 
-                && isOccupiedBy(sx, sy, player) && cnt < FOUR) {
-            row[cnt++] = sx * 100 + sy; // encode: x * 100 + y
-            sx = sx - dx;
-            sy = sy - dy;
+    /**
+     * Remember the row of the given first bit and shift as the winning
+     * row unless one has already been found, and return true if it is
+     * a row at all, i.e., the given bit isn't negative.
+     */
+    private boolean markWin(int start, int shift) {
+        if (start >= 0 && winStart < 0) {
+            winStart = start;
+            winShift = shift;
         }
-        
-        // check and expand to the right/above of (x, y)
-        int ex = x + dx; // end x
-        int ey = y + dy; // end y
-        while (!(dx > 0 && ex >= NUM_OF_SLOTS) && !(dx < 0 && ex < 0) 
-                && !(dy > 0 && ey >= SLOT_HEIGHT) && !(dy < 0 && ey < 0) 
-                && isOccupiedBy(ex, ey, player) && cnt < FOUR) {
-            row[cnt++] = ex * 100 + ey; // encode: x * 100 + y
-            ex = ex + dx;
-            ey = ey + dy;
-        }
-        if (cnt >= FOUR) {
-            for (int xy: row) {
-                winningRow.add(new Place(xy / 100, xy % 100));
+        return start >= 0;
+    }
+
+    /** Is the given bit a place of the winning row? */
+    private boolean isOnWinningRow(int i) {
+        int d = i - winStart;
+        return d >= 0 && d % winShift == 0 && d / winShift < connect;
+    }
+
+    /**
+     * Return the first bit of a row of the given length of the given
+     * checkers in the direction denoted by the given shift; -1 if there
+     * is no such row. Rows are searched in the vertical (shift 1), horizontal
+     * (shift slotBits), diagonal \ (shift slotBits - 1), and diagonal /
+     * (shift slotBits + 1) directions.
+     */
+    private static int rowStart(long stones, int shift, int n) {
+        long m = rowStarts(stones, shift, n);
+        return m == 0 ? -1 : Long.numberOfTrailingZeros(m);
+    }
+
+    /**
+     * Return the first bit of a row of the given length of the given
+     * checkers that runs through the given place in the direction 
+     * denoted by the given shift; -1 if there is no such row.
+     */
+    private static int rowStart(long stones, long place, int shift, int n) {
+        long m = rowStarts(stones, shift, n);
+        if (m == 0) {
+            return -1;
+        }
+        long through = place | (place >>> shift);
+        if (n == 4) {
+            through |= (place >>> (2 * shift)) | (place >>> (3 * shift));
+        } else {
+            for (int k = 2; k < n; k++) {
+                through |= shiftRight(place, k * shift);
             }
         }
-        return cnt >= FOUR;
+        m &= through;
+        return m == 0 ? -1 : Long.numberOfTrailingZeros(m);
     }
 
-    /** Clear the given place. */
+    /**
+     * Return the bitboard of the first places of the rows of the given
+     * length of the given checkers in the direction denoted by the 
+     * given shift.
+     */
+    private static long rowStarts(long stones, int shift, int n) {
+        if (n == 4) {
+            long m = stones & (stones >>> shift);
+            return m & (m >>> (2 * shift));
+        }
+        long m = stones;
+        for (int k = 1; k < n; k++) {
+            m &= shiftRight(stones, k * shift);
+        }
+        return m;
+    }
+
+    /** 
+     * Shift the given bits right by the given distance, or left by its
+     * negation if negative. Rows of long boards may span 64 bits or 
+     * more, e.g., 4x14 boards of rows of five, where the shift operators
+     * would wrap the distance around; no bit is left then.
+     */
+    private static long shiftRight(long bits, int d) {
+        if (d >= 0) {
+            return d < 64 ? bits >>> d : 0;
+        }
+        return d > -64 ? bits << -d : 0;
+    }
+
+    /** Clear the given place. The checker isn't taken off the
+     * move history used by {@link #undo()}. */
     protected void clearPlace(int slot, int y) {
-        places[slot][y] = null;
+        int i = index(slot, y);
+        if (isOccupied(slot, y)) {
+            int side = isCurrent(i) ? turn : turn ^ 1;
+            hash ^= ZOBRIST_KEYS[side][i];
+            mirrorHash ^= mirrorKeys[side][i];
+        }
+        if (wide != null) {
+            wide.clearPlace(i);
+        }
+        current &= ~(1L << i);
+        mask &= ~(1L << i);
+        heights[slot] = 0;
+        raiseHeight(slot);
+        publishSnapshot();
+    }
+    
+    /** 
+     * Return the index of the side of the given player, registering 
+     * the player to a free side if needed. 
+     */
+    private int sideOf(Player player) {
+        int side = indexOf(player);
+        if (side >= 0) {
+            return side;
+        }
+        for (int i = 0; i < sides.length; i++) {
+            if (sides[i] == null) {
+                sides[i] = player;
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(
+                "Only two players can play on a board: " + player.name());
+    }
+    
+    /** Return the index of the side of the given player; -1 if the
+     * player hasn't dropped any checker. */
+    private int indexOf(Player player) {
+        if (player == null) {
+            return -1;
+        }
+        return sides[0] == player ? 0 : (sides[1] == player ? 1 : -1);
+    }
+    
+    /** Move the height of the given slot past its stacked checkers. */
+    private void raiseHeight(int slot) {
+        while (heights[slot] < slotHeight 
+                && isOccupiedBit(slot * slotBits + heights[slot])) {
+            heights[slot]++;
+        }
+    }
+    
+    /** Is the given bit occupied? */
+    private boolean isOccupiedBit(int i) {
+        return wide != null ? wide.isOccupied(i) : (mask & (1L << i)) != 0;
+    }
+    
+    /** Is the given bit occupied by the side to move? */
+    private boolean isCurrent(int i) {
+        return wide != null ? wide.isCurrent(i) : (current & (1L << i)) != 0;
+    }
+
+    /** Return the bit index of the specified place. */
+    private int index(int x, int y) {
+        return x * slotBits + slotHeight - 1 - y;
+    }
+
+    /** Return the bitboard of the specified place. */
+    private long bit(int x, int y) {
+        return 1L << index(x, y);
+    }
+    
+    /** Return the bitboard of the top place of the given slot. */
+    private long topBit(int slot) {
+        return 1L << (slot * slotBits + slotHeight - 1);
     }
 
     /**
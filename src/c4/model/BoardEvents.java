@@ -0,0 +1,292 @@
+package c4.model;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Subscribers of the changes of a {@link Board}, obtained from
+ * {@link Board#events()}. A listener may be notified of each drop
+ * synchronously, on the thread dropping the checker; in batches of a
+ * number of drops; or asynchronously, on a thread of its own fed by
+ * a bounded ring buffer, so that a slow listener doesn't slow down
+ * the game. A board without subscribers notifies nobody and pays no
+ * more than a null check per drop.
+ *
+ * Subscriptions may be made and cancelled on any thread. Drops are
+ * published on the thread changing the board, which must be a single
+ * thread at a time as for any other change of the board.
+ */
+public class BoardEvents {
+
+    /** Listener of drops delivered in batches. */
+    public interface BatchListener {
+
+        /**
+         * Called with the given number of drops, in the order made.
+         * The i-th drop placed a checker of players[i] at place
+         * (slots[i], ys[i]). The arrays are reused after the call
+         * returns.
+         */
+        void checkersDropped(int count, int[] slots, int[] ys,
+                Player[] players);
+    }
+
+    /** A subscription of a listener, cancelled to stop notifications. */
+    public interface Subscription extends AutoCloseable {
+
+        /** Stop notifying the listener of this subscription. */
+        void cancel();
+
+        @Override
+        default void close() {
+            cancel();
+        }
+    }
+
+    /** Subscribers, replaced as a whole on each change. */
+    private volatile Subscriber[] subscribers = new Subscriber[0];
+
+    /** Create a new set of subscribers; see {@link Board#events()}. */
+    BoardEvents() {
+    }
+
+    /** Are there any subscribers? */
+    public boolean hasSubscribers() {
+        return subscribers.length > 0;
+    }
+
+    /**
+     * Notify the given listener of each drop synchronously, on the
+     * thread dropping the checker.
+     */
+    public Subscription subscribe(Board.ChangeListener listener) {
+        return add(new Subscriber() {
+            @Override
+            void checkerDropped(int slot, int y, Player player) {
+                listener.checkerDropped(slot, y, player);
+            }
+        });
+    }
+
+    /**
+     * Notify the given listener of drops in batches of the given size,
+     * on the thread dropping the last checker of a batch. A partial
+     * batch is delivered by {@link #flush()}, which is also called
+     * when the board is cleared.
+     */
+    public Subscription subscribeBatched(BatchListener listener,
+            int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "Batch size must be positive: " + batchSize);
+        }
+        return add(new BatchSubscriber(listener, batchSize));
+    }
+
+    /**
+     * Notify the given listener of each drop on a new daemon thread,
+     * buffering up to the given number of drops. If the buffer is full,
+     * the thread dropping a checker waits for the listener to catch up,
+     * so the listener must not wait for that thread. When cancelled,
+     * the listener is notified of the drops already buffered.
+     */
+    public Subscription subscribeAsync(Board.ChangeListener listener,
+            int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                    "Capacity must be positive: " + capacity);
+        }
+        AsyncSubscriber s = new AsyncSubscriber(listener, capacity);
+        add(s);
+        s.consumer.start();
+        return s;
+    }
+
+    /** Deliver the partial batches of the batched listeners. */
+    public void flush() {
+        for (Subscriber s: subscribers) {
+            s.flush();
+        }
+    }
+
+    /** Notify the subscribers of the given drop. */
+    void checkerDropped(int slot, int y, Player player) {
+        for (Subscriber s: subscribers) {
+            s.checkerDropped(slot, y, player);
+        }
+    }
+
+    /** Add the given subscriber and return it. */
+    private synchronized Subscriber add(Subscriber s) {
+        Subscriber[] old = subscribers;
+        Subscriber[] a = Arrays.copyOf(old, old.length + 1);
+        a[old.length] = s;
+        subscribers = a;
+        return s;
+    }
+
+    /** Remove the given subscriber; return false if not subscribed. */
+    private synchronized boolean remove(Subscriber s) {
+        Subscriber[] old = subscribers;
+        for (int i = 0; i < old.length; i++) {
+            if (old[i] == s) {
+                Subscriber[] a = new Subscriber[old.length - 1];
+                System.arraycopy(old, 0, a, 0, i);
+                System.arraycopy(old, i + 1, a, i, a.length - i);
+                subscribers = a;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** A subscription notified of each drop on the dropping thread. */
+    private abstract class Subscriber implements Subscription {
+
+        /** Called when a checker is dropped. */
+        abstract void checkerDropped(int slot, int y, Player player);
+
+        /** Deliver buffered drops, if any. */
+        void flush() {
+        }
+
+        @Override
+        public void cancel() {
+            remove(this);
+        }
+    }
+
+    /** A subscription delivering drops in batches. */
+    private class BatchSubscriber extends Subscriber {
+
+        /** Listener of the batches. */
+        private final BatchListener listener;
+
+        /** Drops of the current batch; the first count are used. */
+        private final int[] slots, ys;
+        private final Player[] players;
+
+        /** Number of drops of the current batch. */
+        private int count;
+
+        BatchSubscriber(BatchListener listener, int batchSize) {
+            this.listener = listener;
+            slots = new int[batchSize];
+            ys = new int[batchSize];
+            players = new Player[batchSize];
+        }
+
+        @Override
+        void checkerDropped(int slot, int y, Player player) {
+            slots[count] = slot;
+            ys[count] = y;
+            players[count] = player;
+            if (++count == slots.length) {
+                flush();
+            }
+        }
+
+        @Override
+        void flush() {
+            if (count > 0) {
+                int n = count;
+                count = 0;
+                listener.checkersDropped(n, slots, ys, players);
+                Arrays.fill(players, 0, n, null);
+            }
+        }
+    }
+
+    /**
+     * A subscription delivering drops on a thread of its own through a
+     * single-producer, single-consumer ring buffer. A drop is packed
+     * into a long, and its player is stored alongside.
+     */
+    private class AsyncSubscriber extends Subscriber {
+
+        /** Listener of the drops. */
+        private final Board.ChangeListener listener;
+
+        /** Ring buffer of packed drops and their players. */
+        private final long[] drops;
+        private final Player[] players;
+
+        /** Capacity of the ring buffer minus one; a power of two minus one. */
+        private final int mask;
+
+        /** Number of drops published; written by the producer only. */
+        private volatile long head;
+
+        /** Number of drops delivered; written by the consumer only. */
+        private volatile long tail;
+
+        /** Is the consumer parked, or about to park, for a drop? */
+        private volatile boolean waiting;
+
+        /** Has this subscription been cancelled? */
+        private volatile boolean cancelled;
+
+        /** Thread notifying the listener. */
+        private final Thread consumer;
+
+        AsyncSubscriber(Board.ChangeListener listener, int capacity) {
+            this.listener = listener;
+            int n = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+            drops = new long[n];
+            players = new Player[n];
+            mask = n - 1;
+            consumer = new Thread(this::deliver, "board-events");
+            consumer.setDaemon(true);
+        }
+
+        @Override
+        void checkerDropped(int slot, int y, Player player) {
+            long h = head;
+            while (h - tail > mask) {
+                if (cancelled) {
+                    return;
+                }
+                LockSupport.parkNanos(this, 10000); // buffer full
+            }
+            int i = (int) h & mask;
+            drops[i] = (long) slot << 32 | (y & 0xFFFFFFFFL);
+            players[i] = player;
+            head = h + 1;
+            if (waiting) {
+                LockSupport.unpark(consumer);
+            }
+        }
+
+        /** Notify the listener of the published drops until cancelled. */
+        private void deliver() {
+            long t = tail;
+            while (true) {
+                if (t == head) {
+                    if (cancelled) {
+                        return;
+                    }
+                    waiting = true;
+                    if (t == head && !cancelled) {
+                        LockSupport.park(this);
+                    }
+                    waiting = false;
+                    continue;
+                }
+                int i = (int) t & mask;
+                long drop = drops[i];
+                Player player = players[i];
+                players[i] = null;
+                tail = ++t;
+                listener.checkerDropped((int) (drop >>> 32), (int) drop,
+                        player);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            super.cancel();
+            cancelled = true;
+            LockSupport.unpark(consumer);
+        }
+    }
+}
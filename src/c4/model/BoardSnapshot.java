@@ -0,0 +1,176 @@
+package c4.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import c4.model.Board.Place;
+
+/**
+ * An immutable snapshot of the position of a {@link Board}, obtained
+ * from {@link Board#snapshot()}. A board publishes a new snapshot
+ * through a volatile reference whenever a checker is dropped or the
+ * board is cleared, so any thread may read a consistent position
+ * without locking, even while the board is changed, e.g., by a search
+ * making and taking back moves on it. A snapshot of a standard board
+ * holds its checkers in two longs, as the board does, and costs a
+ * single small object per drop.
+ */
+public final class BoardSnapshot {
+
+    /** Number of slots, places in a slot and checkers in a winning row. */
+    private final int numOfSlots, slotHeight, connect;
+
+    /** Bitboards of the checkers of the side to move and of all
+     * occupied places, as those of a board; unused if wide. */
+    private final long current, mask;
+
+    /** Words of the bitboards of a board of more than 64 bits;
+     * null otherwise. */
+    private final long[] wideCurrent, wideMask;
+
+    /** Player of the side to move and of the other side; null if
+     * not yet known. */
+    private final Player mover, other;
+
+    /** Number of checkers dropped. */
+    private final int numOfMoves;
+
+    /** Slot of the last checker dropped; -1 if none. */
+    private final int lastMove;
+
+    /** Zobrist hash of the position. */
+    private final long hash;
+
+    /** First bit and shift of the winning row; winStart is -1 if
+     * no winning row has been found. */
+    private final int winStart, winShift;
+
+    /** Create a new snapshot of the given fields of a board. */
+    BoardSnapshot(int numOfSlots, int slotHeight, int connect, long current,
+            long mask, long[] wideCurrent, long[] wideMask, Player mover,
+            Player other, int numOfMoves, int lastMove, long hash,
+            int winStart, int winShift) {
+        this.numOfSlots = numOfSlots;
+        this.slotHeight = slotHeight;
+        this.connect = connect;
+        this.current = current;
+        this.mask = mask;
+        this.wideCurrent = wideCurrent;
+        this.wideMask = wideMask;
+        this.mover = mover;
+        this.other = other;
+        this.numOfMoves = numOfMoves;
+        this.lastMove = lastMove;
+        this.hash = hash;
+        this.winStart = winStart;
+        this.winShift = winShift;
+    }
+
+    /** Return the number of slots (columns) of the board. */
+    public int numOfSlots() {
+        return numOfSlots;
+    }
+
+    /** Return the height of slots of the board. */
+    public int slotHeight() {
+        return slotHeight;
+    }
+
+    /** Return the length of a winning row of the board. */
+    public int connectLength() {
+        return connect;
+    }
+
+    /** Return the number of checkers dropped since the board was cleared. */
+    public int numOfMoves() {
+        return numOfMoves;
+    }
+
+    /** Return the slot index of the last checker dropped; -1 if none. */
+    public int lastMove() {
+        return lastMove;
+    }
+
+    /** Return the Zobrist hash of the position; see {@link Board#hash()}. */
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * Is the specified place occupied?
+     *
+     * @param x 0-based slot (column) index
+     * @param y 0-based place (row) index
+     */
+    public boolean isOccupied(int x, int y) {
+        return isSet(wideMask, mask, index(x, y));
+    }
+
+    /**
+     * Return the player occupying the specified place; null if the
+     * place is empty.
+     *
+     * @param x 0-based slot (column) index
+     * @param y 0-based place (row) index
+     */
+    public Player playerAt(int x, int y) {
+        int i = index(x, y);
+        if (!isSet(wideMask, mask, i)) {
+            return null;
+        }
+        return isSet(wideCurrent, current, i) ? mover : other;
+    }
+
+    /** Is the given slot open, i.e., not full? */
+    public boolean isSlotOpen(int slot) {
+        return !isOccupied(slot, 0);
+    }
+
+    /** Are all places occupied? */
+    public boolean isFull() {
+        for (int i = 0; i < numOfSlots; i++) {
+            if (isSlotOpen(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Does the position have a winning row? */
+    public boolean hasWinningRow() {
+        return winStart >= 0;
+    }
+
+    /** Return the places of the winning row; empty if none. */
+    public List<Place> winningRow() {
+        if (winStart < 0) {
+            return Collections.emptyList();
+        }
+        int slotBits = slotHeight + 1;
+        List<Place> row = new ArrayList<>(connect);
+        for (int k = 0, i = winStart; k < connect; k++, i += winShift) {
+            row.add(new Place(i / slotBits, slotHeight - 1 - i % slotBits));
+        }
+        return row;
+    }
+
+    /** Is this a snapshot of the current position of the given board? */
+    public boolean matches(Board board) {
+        return board.hash() == hash && board.numOfMoves() == numOfMoves;
+    }
+
+    /** Return the bit index of the specified place. */
+    private int index(int x, int y) {
+        return x * (slotHeight + 1) + slotHeight - 1 - y;
+    }
+
+    /** Is the given bit set in the given words, if not null, or the
+     * given bitboard? */
+    private static boolean isSet(long[] words, long bits, int i) {
+        if (words != null) {
+            return (words[i >>> 6] & (1L << i)) != 0;
+        }
+        return (bits & (1L << i)) != 0;
+    }
+}
@@ -0,0 +1,304 @@
+package c4.model;
+
+/**
+ * Bitboards of a {@link Board} too large for a single <code>long</code>.
+ * The places are numbered as in a single-word bitboard, i.e., bit
+ * <code>slot * slotBits + row</code>, but the bits are spread over an
+ * array of words, bit i being bit <code>i % 64</code> of word
+ * <code>i / 64</code>. Shifts carry bits across words, so rows are
+ * found by the same shift and mask tricks as on a single word.
+ */
+final class WideBitboard {
+
+    /** Number of slots of the board. */
+    private final int numOfSlots;
+
+    /** Number of places in each slot. */
+    private final int slotHeight;
+
+    /** Number of bits of each slot. */
+    private final int slotBits;
+
+    /** Length of a winning row. */
+    private final int connect;
+
+    /** Checkers of the side to move. */
+    private final long[] current;
+
+    /** All occupied places. */
+    private final long[] mask;
+
+    /** All places of the board. */
+    private final long[] board;
+
+    /** Scratch bitboards used by the row searches. */
+    private final long[] m, p, r, t;
+
+    /** Create empty bitboards of the given dimensions. */
+    WideBitboard(int numOfSlots, int slotHeight, int connect) {
+        this.numOfSlots = numOfSlots;
+        this.slotHeight = slotHeight;
+        this.slotBits = slotHeight + 1;
+        this.connect = connect;
+        int words = (numOfSlots * slotBits + 63) >>> 6;
+        current = new long[words];
+        mask = new long[words];
+        board = new long[words];
+        for (int slot = 0; slot < numOfSlots; slot++) {
+            for (int row = 0; row < slotHeight; row++) {
+                int i = slot * slotBits + row;
+                board[i >>> 6] |= 1L << i;
+            }
+        }
+        m = new long[words];
+        p = new long[words];
+        r = new long[words];
+        t = new long[words];
+    }
+
+    /** Create a copy of the given bitboards. */
+    WideBitboard(WideBitboard other) {
+        this(other.numOfSlots, other.slotHeight, other.connect);
+        System.arraycopy(other.current, 0, current, 0, current.length);
+        System.arraycopy(other.mask, 0, mask, 0, mask.length);
+    }
+
+    /** Remove all checkers. */
+    void clear() {
+        for (int j = 0; j < mask.length; j++) {
+            current[j] = 0;
+            mask[j] = 0;
+        }
+    }
+
+    /** Place a checker of the side to move at the given bit, and make
+     * the other side the side to move. */
+    void play(int i) {
+        flip();
+        mask[i >>> 6] |= 1L << i;
+    }
+
+    /** Take back the checker at the given bit, and make its side the
+     * side to move. */
+    void undo(int i) {
+        mask[i >>> 6] &= ~(1L << i);
+        flip();
+    }
+
+    /** Make the other side the side to move. */
+    void flip() {
+        for (int j = 0; j < mask.length; j++) {
+            current[j] ^= mask[j];
+        }
+    }
+
+    /** Remove the checker, if any, at the given bit. */
+    void clearPlace(int i) {
+        current[i >>> 6] &= ~(1L << i);
+        mask[i >>> 6] &= ~(1L << i);
+    }
+
+    /** Return a copy of the words of the checkers of the side to move. */
+    long[] copyOfCurrent() {
+        return current.clone();
+    }
+
+    /** Return a copy of the words of the occupied places. */
+    long[] copyOfMask() {
+        return mask.clone();
+    }
+
+    /** Is the given bit occupied? */
+    boolean isOccupied(int i) {
+        return (mask[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /** Is the given bit occupied by the side to move? */
+    boolean isCurrent(int i) {
+        return (current[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Return a 64-bit digest of the position. Unlike the key of a
+     * single-word bitboard, different positions may share a digest.
+     */
+    long key() {
+        return digest(current, mask);
+    }
+
+    /** Return the digest of the left-right mirror image of the position. */
+    long mirrorKey() {
+        mirror(current, m);
+        mirror(mask, p);
+        return digest(m, p);
+    }
+
+    /**
+     * Return the first bit of a winning row of the side to move (if
+     * the given flag is true) or the other side in the direction
+     * denoted by the given shift; -1 if there is no such row.
+     */
+    int rowStart(boolean mover, int shift) {
+        long[] stones = stones(mover, r);
+        System.arraycopy(stones, 0, m, 0, m.length);
+        for (int k = 1; k < connect; k++) {
+            shift(stones, k * shift, t);
+            and(m, t);
+        }
+        for (int j = 0; j < m.length; j++) {
+            if (m[j] != 0) {
+                return j * 64 + Long.numberOfTrailingZeros(m[j]);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the first bit of a winning row through the given bit in
+     * the direction denoted by the given shift, counting the given bit
+     * as a checker of the side to move (if the given flag is true) or
+     * the other side; -1 if there is no such row. The sentinel bit on
+     * top of each slot stops a row from wrapping into the next slot.
+     */
+    int rowStartThrough(boolean mover, int i, int shift) {
+        int bits = numOfSlots * slotBits;
+        int start = i;
+        while (start - shift >= 0 && isOwn(mover, start - shift)) {
+            start -= shift;
+        }
+        int end = i;
+        while (end + shift < bits && isOwn(mover, end + shift)) {
+            end += shift;
+        }
+        return (end - start) / shift + 1 >= connect ? start : -1;
+    }
+
+    /**
+     * Return the number of empty places that would complete a winning
+     * row of the side to move (if the given flag is true) or the other
+     * side, whether or not the places can be reached now.
+     */
+    int countWinningPlaces(boolean mover) {
+        long[] stones = stones(mover, m);
+        for (int j = 0; j < r.length; j++) {
+            r[j] = 0;
+        }
+        winningPlaces(stones, 1);
+        winningPlaces(stones, slotBits);
+        winningPlaces(stones, slotBits - 1);
+        winningPlaces(stones, slotBits + 1);
+        int n = 0;
+        for (int j = 0; j < r.length; j++) {
+            n += Long.bitCount(r[j] & board[j] & ~mask[j]);
+        }
+        return n;
+    }
+
+    /**
+     * Add to r the places that would complete a winning row of the
+     * given checkers in the direction denoted by the given shift,
+     * trying the missing place at each position of the row.
+     */
+    private void winningPlaces(long[] stones, int shift) {
+        for (int gap = 0; gap < connect; gap++) {
+            for (int j = 0; j < p.length; j++) {
+                p[j] = -1L;
+            }
+            for (int k = 0; k < connect; k++) {
+                if (k != gap) {
+                    shift(stones, (k - gap) * shift, t);
+                    and(p, t);
+                }
+            }
+            for (int j = 0; j < r.length; j++) {
+                r[j] |= p[j];
+            }
+        }
+    }
+
+    /** Is the given bit occupied by the side to move (if the given
+     * flag is true) or the other side? */
+    private boolean isOwn(boolean mover, int i) {
+        long b = 1L << i;
+        int j = i >>> 6;
+        return (mask[j] & b) != 0 && ((current[j] & b) != 0) == mover;
+    }
+
+    /** Return the checkers of the side to move (if the given flag is
+     * true), or those of the other side stored in the given array. */
+    private long[] stones(boolean mover, long[] other) {
+        if (mover) {
+            return current;
+        }
+        for (int j = 0; j < other.length; j++) {
+            other[j] = current[j] ^ mask[j];
+        }
+        return other;
+    }
+
+    /**
+     * Store in dst the given bitboard shifted by the given number of
+     * bits, to lower bits if positive and to higher bits if negative;
+     * i.e., bit i of dst is bit i + d of src.
+     */
+    private static void shift(long[] src, int d, long[] dst) {
+        int n = src.length;
+        int w = Math.abs(d) >>> 6;
+        int b = Math.abs(d) & 63;
+        for (int j = 0; j < n; j++) {
+            long x;
+            if (d >= 0) {
+                int k = j + w;
+                x = k < n ? src[k] >>> b : 0;
+                if (b != 0 && k + 1 < n) {
+                    x |= src[k + 1] << (64 - b);
+                }
+            } else {
+                int k = j - w;
+                x = k >= 0 ? src[k] << b : 0;
+                if (b != 0 && k - 1 >= 0) {
+                    x |= src[k - 1] >>> (64 - b);
+                }
+            }
+            dst[j] = x;
+        }
+    }
+
+    /** Intersect a with b. */
+    private static void and(long[] a, long[] b) {
+        for (int j = 0; j < a.length; j++) {
+            a[j] &= b[j];
+        }
+    }
+
+    /** Store in dst the left-right mirror image of the given bitboard. */
+    private void mirror(long[] src, long[] dst) {
+        for (int j = 0; j < dst.length; j++) {
+            dst[j] = 0;
+        }
+        for (int slot = 0; slot < numOfSlots; slot++) {
+            int to = (numOfSlots - 1 - slot) * slotBits;
+            for (int row = 0, i = slot * slotBits; row < slotBits; row++, i++) {
+                if ((src[i >>> 6] & (1L << i)) != 0) {
+                    dst[(to + row) >>> 6] |= 1L << (to + row);
+                }
+            }
+        }
+    }
+
+    /** Return a 64-bit digest of the given bitboards. */
+    private static long digest(long[] a, long[] b) {
+        long h = 0;
+        for (int j = 0; j < a.length; j++) {
+            h = mix(h ^ a[j]);
+            h = mix(h ^ b[j]);
+        }
+        return h;
+    }
+
+    /** Scramble the bits of the given value. */
+    private static long mix(long h) {
+        h *= 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+}
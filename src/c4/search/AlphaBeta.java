@@ -0,0 +1,257 @@
+package c4.search;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import c4.model.Board;
+
+/**
+ * A fixed-depth negamax search with alpha-beta pruning over a 
+ * {@link Board}. Moves are made and taken back on the given board 
+ * and tried center-first, and non-final positions are scored by the 
+ * difference in the numbers of open threes, i.e., empty places that 
+ * would complete a row of four. Search results are cached in a 
+ * transposition table keyed on {@link Board#canonicalHash()}, so that
+ * a position and its mirror image share an entry, and the best move 
+ * found for a position is tried first when the position or its mirror
+ * image is reached again.
+ * 
+ * A searcher is used by one thread at a time, but any number of 
+ * searchers may share a table. A search can be stopped from another 
+ * thread or by a deadline, in which case nothing it has not finished 
+ * is stored in the table.
+ */
+public class AlphaBeta {
+
+    /** 
+     * Score of a win at the start of a game; a win found n checkers 
+     * into a game is scored WIN - n so that faster wins are preferred. 
+     */
+    public static final int WIN = 1000;
+
+    /** Score of an open three. */
+    private static final int THREAT = 8;
+
+    /** Number of positions visited between checks of the deadline
+     * and the halt flag, minus one; a power of two minus one. */
+    private static final int POLL_MASK = 1023;
+
+    /** Cache of search results. */
+    private final TranspositionTable table;
+
+    /** Slot indices in the center-first order; built per board width. */
+    private int[] order = new int[0];
+
+    /** Number of slots by which to rotate the move order at the root. */
+    private int rootRotation;
+
+    /** True if the current search is to be abandoned. */
+    private volatile boolean stopped;
+
+    /** Set to stop this and other searchers until it is cleared. */
+    private final AtomicBoolean halt;
+
+    /** System.nanoTime() after which a search is abandoned. */
+    private long deadline = Long.MAX_VALUE;
+
+    /** Number of positions visited since the last reset. */
+    private long nodes;
+
+    /** Score of the last completed search. */
+    private int lastScore;
+
+    /** Create a new searcher caching its results in the given table. */
+    public AlphaBeta(TranspositionTable table) {
+        this(table, new AtomicBoolean());
+    }
+
+    /** 
+     * Create a new searcher caching its results in the given table.
+     * A search is abandoned whenever the given flag is set.
+     */
+    public AlphaBeta(TranspositionTable table, AtomicBoolean halt) {
+        this.table = table;
+        this.halt = halt;
+    }
+
+    /** 
+     * Abandon searches after the given System.nanoTime() value; 
+     * Long.MAX_VALUE for no deadline. 
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /** 
+     * Rotate the move order at the root by the given number of slots.
+     * Searchers sharing a table start with different moves this way.
+     */
+    public void setRootRotation(int rotation) {
+        this.rootRotation = rotation;
+    }
+
+    /** Make the current or next search return as soon as possible. */
+    public void stop() {
+        stopped = true;
+    }
+
+    /** Clear the stop request and the node count. */
+    public void reset() {
+        stopped = false;
+        nodes = 0;
+    }
+
+    /** Return the number of positions visited since the last reset. */
+    public long nodes() {
+        return nodes;
+    }
+
+    /** Return the score of the last completed search for the side
+     * to move at its root. */
+    public int score() {
+        return lastScore;
+    }
+
+    /**
+     * Search the given board to the given depth in plies and return 
+     * the best slot to drop a checker for the side to move; -1 if the
+     * search is stopped before completion. The board must have an open
+     * slot and is left unchanged.
+     */
+    public int bestMove(Board board, int depth) {
+        if (halt.get()) {
+            return -1;
+        }
+        int[] order = moveOrder(board);
+        int n = order.length;
+        int best = -1;
+        int alpha = -WIN - 1;
+        for (int i = 0; i < n; i++) {
+            int slot = order[(i + rootRotation) % n];
+            if (board.isSlotOpen(slot)) {
+                if (board.isWinningMove(slot)) {
+                    lastScore = WIN - board.numOfMoves() - 1;
+                    return slot;
+                }
+                if (best < 0) {
+                    best = slot;
+                }
+                board.play(slot);
+                int score = -negamax(board, depth - 1, -WIN - 1, -alpha);
+                board.undo();
+                if (stopped) {
+                    return -1;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                    best = slot;
+                }
+            }
+        }
+        lastScore = alpha;
+        return best;
+    }
+
+    /**
+     * Return the score of the given board for the side to move,
+     * searching the given number of plies. The score is exact if it
+     * lies strictly between alpha and beta; otherwise, it is a bound.
+     */
+    private int negamax(Board board, int depth, int alpha, int beta) {
+        if (stopped) {
+            return 0;
+        }
+        if ((++nodes & POLL_MASK) == 0 
+                && (halt.get() || System.nanoTime() > deadline)) {
+            stopped = true;
+            return 0;
+        }
+        if (board.isFull()) {
+            return 0;
+        }
+        int[] order = this.order;
+        for (int slot: order) {
+            if (board.isWinningMove(slot)) {
+                return WIN - board.numOfMoves() - 1;
+            }
+        }
+        if (depth == 0) {
+            return THREAT * (board.countThreats() 
+                    - board.countOpponentThreats());
+        }
+        
+        long hash = board.canonicalHash();
+        boolean mirrored = board.isMirrored();
+        long entry = table.probe(hash);
+        int hashMove = TranspositionTable.NO_MOVE;
+        if (entry != TranspositionTable.MISS) {
+            hashMove = TranspositionTable.move(entry);
+            if (mirrored && hashMove < order.length) {
+                hashMove = board.mirrorSlot(hashMove);
+            }
+            if (TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+        
+        int alpha0 = alpha;
+        int best = -WIN - 1;
+        int bestMove = TranspositionTable.NO_MOVE;
+        for (int i = -1; i < order.length; i++) {
+            int slot = i < 0 ? hashMove : order[i];
+            // a table shared by threads may hold a move of another board
+            if (slot >= order.length || !board.isSlotOpen(slot) 
+                    || (i >= 0 && slot == hashMove)) {
+                continue;
+            }
+            board.play(slot);
+            int score = -negamax(board, depth - 1, -beta, -alpha);
+            board.undo();
+            if (score > best) {
+                best = score;
+                bestMove = slot;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        if (stopped) {
+            return 0;
+        }
+        int bound = best <= alpha0 ? TranspositionTable.UPPER 
+                : (best >= beta ? TranspositionTable.LOWER 
+                        : TranspositionTable.EXACT);
+        if (mirrored && bestMove != TranspositionTable.NO_MOVE) {
+            bestMove = board.mirrorSlot(bestMove);
+        }
+        table.store(hash, depth, best, bound, bestMove);
+        return best;
+    }
+
+    /** Is the given score that of a win or a loss? */
+    public static boolean isDecisive(int score) {
+        return Math.abs(score) > WIN / 2;
+    }
+
+    /** Return the slot indices of the given board in center-first order. */
+    private int[] moveOrder(Board board) {
+        int n = board.numOfSlots();
+        if (order.length != n) {
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) {
+                // n/2, n/2 - 1, n/2 + 1, n/2 - 2, ... 
+                order[i] = n / 2 + (i % 2 == 0 ? i / 2 : -(i + 1) / 2);
+            }
+            this.order = order;
+        }
+        return order;
+    }
+}
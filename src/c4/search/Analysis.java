@@ -0,0 +1,270 @@
+package c4.search;
+
+import java.util.Arrays;
+
+import c4.model.Board;
+import c4.model.BoardEvents;
+import c4.model.BoardSnapshot;
+
+/**
+ * A background analysis of the moves of a position, scoring each open
+ * slot for the side to move and refining the scores for as long as
+ * the position stays the same. The moves are searched by
+ * {@link AlphaBeta} to increasing depths until the searches reach the
+ * end of the game, when their scores become exact; a position with few
+ * empty places is solved at once by a {@link Solver} instead. When a
+ * new position is given, the search in progress is abandoned and
+ * the analysis starts over on a thread of its own, keeping the
+ * transposition tables of its searchers, so that positions following
+ * each other are analyzed much faster than from scratch.
+ *
+ * Scores are those of {@link AlphaBeta}: a win or a loss is scored
+ * by the number of checkers of the game when it is won, and other
+ * moves by a heuristic unless exact. Results are published once a
+ * depth and may be read on any thread; an analysis never makes its
+ * reader wait.
+ */
+public class Analysis implements AutoCloseable {
+
+    /** Score of a slot that isn't open. */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    /** Largest number of empty places of a position solved at once. */
+    private static final int SOLVER_EMPTY = 20;
+
+    /** Size of the transposition table of the search in MB. */
+    private static final int TABLE_SIZE = 16;
+
+    /** Searcher of positions too large to solve. */
+    private final AlphaBeta search = new AlphaBeta(
+            new TranspositionTable(TABLE_SIZE));
+
+    /** Solver of positions with few empty places. */
+    private final Solver solver = new Solver();
+
+    /** Thread running the analysis. */
+    private final Thread thread;
+
+    /** Position to analyze next, if not taken yet; guarded by this. */
+    private Board pending;
+
+    /** Hash of the last position given to analyze, if any; guarded
+     * by this. */
+    private long requested;
+    private boolean hasRequested;
+
+    /** Has this analysis been closed? */
+    private volatile boolean closed;
+
+    /** Latest result; null if none yet. */
+    private volatile Result result;
+
+    /** Create a new analysis, waiting for a position to analyze. */
+    public Analysis() {
+        thread = new Thread(this::run, "analysis");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Analyze the given board, abandoning the analysis of the previous
+     * one unless it was of the same position. The board is copied, so
+     * this method is called on the thread changing the board.
+     */
+    public void analyze(Board board) {
+        synchronized (this) {
+            if (hasRequested && board.hash() == requested) {
+                return;
+            }
+            requested = board.hash();
+            hasRequested = true;
+            pending = new Board(board);
+            notifyAll();
+        }
+        search.stop();
+    }
+
+    /**
+     * Analyze the given board now and whenever a checker is dropped on
+     * it until the returned subscription is cancelled.
+     */
+    public BoardEvents.Subscription watch(Board board) {
+        analyze(board);
+        return board.events().subscribe((slot, y, player) ->
+                analyze(board));
+    }
+
+    /** Return the latest result; null if none yet. */
+    public Result result() {
+        return result;
+    }
+
+    /** Stop the analysis and its thread. */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        search.stop();
+    }
+
+    /** Analyze the given positions until closed. */
+    private void run() {
+        while (!closed) {
+            Board board;
+            synchronized (this) {
+                while (pending == null && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                board = pending;
+                pending = null;
+            }
+            if (board != null) {
+                analyzePosition(board);
+            }
+        }
+    }
+
+    /** Is there a newer position to analyze? */
+    private synchronized boolean isSuperseded() {
+        return pending != null || closed;
+    }
+
+    /** Score the open slots of the given board until done or superseded. */
+    private void analyzePosition(Board board) {
+        int n = board.numOfSlots();
+        int[] scores = new int[n];
+        if (board.hasWinningRow() || board.isFull()) {
+            Arrays.fill(scores, NONE);
+            result = new Result(board.hash(), 0, scores, true);
+            return;
+        }
+        int empty = n * board.slotHeight() - board.numOfMoves();
+        boolean solvable = n * (board.slotHeight() + 1) <= 64
+                && empty <= SOLVER_EMPTY;
+        for (int depth = 1; !isSuperseded(); depth++) {
+            boolean exact = true;
+            for (int slot = 0; slot < n; slot++) {
+                if (!board.isSlotOpen(slot)) {
+                    scores[slot] = NONE;
+                    continue;
+                }
+                if (board.isWinningMove(slot)) {
+                    scores[slot] = AlphaBeta.WIN - board.numOfMoves() - 1;
+                    continue;
+                }
+                board.play(slot);
+                if (board.isFull()) {
+                    scores[slot] = 0;
+                } else if (solvable) {
+                    scores[slot] = scoreOf(solver.solve(board),
+                            board.numOfMoves());
+                } else {
+                    // a stop request may be older than the position
+                    while (search.bestMove(board, depth) < 0
+                            && !isSuperseded()) {
+                        search.reset();
+                    }
+                    scores[slot] = -search.score();
+                    // the search reaches the end of every game
+                    exact &= depth >= empty - 1;
+                }
+                board.undo();
+                if (isSuperseded()) {
+                    return;
+                }
+            }
+            result = new Result(board.hash(), solvable ? 0 : depth + 1,
+                    scores.clone(), exact);
+            if (exact) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Return the score of the move leading to a position of the given
+     * number of checkers whose given result is for the opponent.
+     */
+    private static int scoreOf(Solver.Result r, int numOfMoves) {
+        int end = numOfMoves + r.distance();
+        switch (r.outcome()) {
+        case LOSS:
+            return AlphaBeta.WIN - end;
+        case WIN:
+            return -(AlphaBeta.WIN - end);
+        default:
+            return 0;
+        }
+    }
+
+    /** Scores of the open slots of a position for the side to move. */
+    public static class Result {
+
+        /** Hash of the position. */
+        private final long hash;
+
+        /** Depth of the search in plies; 0 if solved. */
+        private final int depth;
+
+        /** Scores of the slots; NONE if a slot isn't open. */
+        private final int[] scores;
+
+        /** Are the scores exact? */
+        private final boolean exact;
+
+        /** Create a new result of the given fields. */
+        private Result(long hash, int depth, int[] scores, boolean exact) {
+            this.hash = hash;
+            this.depth = depth;
+            this.scores = scores;
+            this.exact = exact;
+        }
+
+        /** Is this the result of the given position? */
+        public boolean matches(BoardSnapshot position) {
+            return position.hash() == hash;
+        }
+
+        /** Return the depth of the search in plies; 0 if solved. */
+        public int depth() {
+            return depth;
+        }
+
+        /** Are the scores exact, not heuristic? */
+        public boolean isExact() {
+            return exact;
+        }
+
+        /** Return the score of the given slot; NONE if it isn't open. */
+        public int score(int slot) {
+            return scores[slot];
+        }
+
+        /**
+         * Return a short label of the score of the given slot on the
+         * given position, e.g., "W5" for a win by the fifth checker
+         * from now on, "L6" for a loss, "D" for a draw, or a heuristic
+         * score, e.g., "+16"; null if the slot isn't open.
+         */
+        public String label(int slot, BoardSnapshot position) {
+            int s = scores[slot];
+            if (s == NONE) {
+                return null;
+            }
+            if (AlphaBeta.isDecisive(s)) {
+                int end = AlphaBeta.WIN - Math.abs(s) - position.numOfMoves();
+                return (s > 0 ? "W" : "L") + end;
+            }
+            if (exact) {
+                return "D";
+            }
+            return s > 0 ? "+" + s : Integer.toString(s);
+        }
+    }
+}
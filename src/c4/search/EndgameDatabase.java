@@ -0,0 +1,177 @@
+package c4.search;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import c4.model.Board;
+
+/**
+ * A precomputed database of the exact {@link Solver} scores of
+ * positions with up to a number of empty places. A position and its
+ * left-right mirror image share a single record keyed on
+ * {@link Board#canonicalKey()}. A database covers standard boards only.
+ *
+ * A database file is a {@link RecordFile} whose header holds the
+ * largest number of empty places of its positions and whose records
+ * hold the score of each position for the side to move. As there are
+ * far too many endgame positions to enumerate them all, a database is
+ * built from the endgames of random games: every position reachable
+ * from the position of a game with the given number of empty places
+ * is solved and stored.
+ *
+ * Usage of the builder tool:
+ * <code>EndgameDatabase file empty [games [seed]]</code>
+ */
+public class EndgameDatabase {
+
+    /** Magic number at the start of a database file; "C4EG". */
+    private static final int MAGIC = 0x43344547;
+
+    /** Returned by {@link #score(Board)} for a position not in a database. */
+    public static final int NOT_FOUND = RecordFile.NOT_FOUND;
+
+    /** Records of this database, mapped from its file. */
+    private final RecordFile records;
+
+    /**
+     * Open the database stored in the given file.
+     *
+     * @throws IOException if the file can't be read or isn't a database
+     */
+    public EndgameDatabase(Path file) throws IOException {
+        records = new RecordFile(file, MAGIC, "an endgame database");
+    }
+
+    /** Return the number of positions in this database. */
+    public int size() {
+        return records.size();
+    }
+
+    /** Return the largest number of empty places of a position in
+     * this database. */
+    public int maxEmpty() {
+        return records.parameter();
+    }
+
+    /**
+     * Return the exact score of the given board for the side to move;
+     * NOT_FOUND if the position isn't in this database.
+     */
+    public int score(Board board) {
+        if (!board.isStandard() || board.numOfSlots() * board.slotHeight()
+                - board.numOfMoves() > maxEmpty()) {
+            return NOT_FOUND;
+        }
+        return score(board.canonicalKey());
+    }
+
+    /** Return the exact score of the position of the given canonical
+     * key; NOT_FOUND if the position isn't in this database. */
+    int score(long key) {
+        return records.find(key);
+    }
+
+    /**
+     * Build a database of the positions with up to the given number of
+     * empty places reachable from the endgames of the given number of
+     * random games, and write it to the given file.
+     */
+    public static void build(Path file, int empty, int games, long seed)
+            throws IOException {
+        Builder builder = new Builder();
+        Random random = new Random(seed);
+        Board board = new Board();
+        for (int g = 0; g < games; g++) {
+            if (randomEndgame(board, empty, random)) {
+                builder.visit(board);
+            }
+        }
+        RecordFile.write(file, MAGIC, empty, builder.records, builder.size);
+    }
+
+    /**
+     * Play random moves on the given board, after clearing it, until it
+     * has the given number of empty places; return false if the game
+     * is won before.
+     */
+    private static boolean randomEndgame(Board board, int empty,
+            Random random) {
+        board.clear();
+        int n = board.numOfSlots();
+        while (n * board.slotHeight() - board.numOfMoves() > empty) {
+            int slot;
+            do {
+                slot = random.nextInt(n);
+            } while (!board.isSlotOpen(slot));
+            int y = board.play(slot);
+            if (board.lastMoveWins(slot, y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Enumerate and solve positions for a new database. */
+    private static class Builder {
+
+        /** Solver to score positions. */
+        private final Solver solver =
+                new Solver(new TranspositionTable(256));
+
+        /** Keys of the positions visited so far. */
+        private final Set<Long> visited = new HashSet<>();
+
+        /** Records built so far; the first size elements are used. */
+        private long[] records = new long[1024];
+
+        /** Number of records built so far. */
+        private int size;
+
+        /** Visit the given position and its successors. */
+        void visit(Board board) {
+            long key = board.canonicalKey();
+            if (board.isFull() || !visited.add(key)) {
+                return;
+            }
+            add(RecordFile.record(key, solver.score(board)));
+            for (int slot = 0; slot < board.numOfSlots(); slot++) {
+                if (board.isSlotOpen(slot)) {
+                    int y = board.play(slot);
+                    if (!board.lastMoveWins(slot, y)) {
+                        visit(board);
+                    }
+                    board.undo();
+                }
+            }
+        }
+
+        /** Add the given record. */
+        private void add(long record) {
+            if (size == records.length) {
+                records = Arrays.copyOf(records, size * 2);
+            }
+            records[size++] = record;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: EndgameDatabase file empty [games [seed]]");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[0]);
+        int empty = Integer.parseInt(args[1]);
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        long start = System.currentTimeMillis();
+        build(file, empty, games, seed);
+        EndgameDatabase database = new EndgameDatabase(file);
+        System.out.printf("%d positions in %d ms%n", database.size(),
+                System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,192 @@
+package c4.search;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import c4.model.Board;
+
+/**
+ * A parallel alpha-beta search using Lazy SMP. All threads search the
+ * same position, each on its own copy of the board, and share a single
+ * transposition table. The main thread searches on the caller's thread;
+ * helper threads search one ply deeper every other thread and start with
+ * different moves at the root, so that they fill the table with results
+ * the main thread can use. The table is read and written without locks;
+ * an entry is a single <code>long</code>, and a move read from 
+ * an entry is checked before use.
+ * 
+ * A search may also be run iteratively deeper under a time limit, and
+ * any search can be stopped from another thread by {@link #stop()}.
+ */
+public class LazySmp {
+
+    /** Searchers; the first is run by the calling thread. */
+    private final AlphaBeta[] searchers;
+
+    /** Runs helper searchers; null if there is a single thread. */
+    private final ExecutorService helpers;
+
+    /** Set to stop all searchers until {@link #resume()} is called. */
+    private final AtomicBoolean halt = new AtomicBoolean();
+
+    /** Score of the last search. */
+    private int lastScore;
+
+    /** Depth of the last completed iteration of an iterative search. */
+    private int lastDepth;
+
+    /** Create a new search of the given number of threads sharing
+     * the given table. */
+    public LazySmp(TranspositionTable table, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads must be positive: " + threads);
+        }
+        searchers = new AlphaBeta[threads];
+        for (int i = 0; i < threads; i++) {
+            searchers[i] = new AlphaBeta(table, halt);
+            searchers[i].setRootRotation(i);
+        }
+        helpers = threads == 1 ? null 
+                : Executors.newFixedThreadPool(threads - 1, r -> {
+                    Thread t = new Thread(r, "lazy-smp");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /** Return the number of threads of this search. */
+    public int threads() {
+        return searchers.length;
+    }
+
+    /** Return the number of positions visited by all threads in
+     * the last search. */
+    public long nodes() {
+        long n = 0;
+        for (AlphaBeta s: searchers) {
+            n += s.nodes();
+        }
+        return n;
+    }
+
+    /** Return the score of the last search for the side to move. */
+    public int score() {
+        return lastScore;
+    }
+
+    /** Return the depth completed by the last iterative search. */
+    public int depth() {
+        return lastDepth;
+    }
+
+    /** 
+     * Make the current search, if any, return as soon as possible, 
+     * and make searches fail until {@link #resume()} is called. 
+     */
+    public void stop() {
+        halt.set(true);
+    }
+
+    /** Allow searches again after {@link #stop()}. */
+    public void resume() {
+        halt.set(false);
+    }
+
+    /**
+     * Search the given board iteratively deeper, from one ply up to 
+     * the given depth, and return the best slot of the last completed
+     * iteration. An iteration not completed within the given time 
+     * limit in milliseconds is abandoned; the first iteration is always
+     * completed. The search also ends once a win or loss is proven or 
+     * all the remaining moves have been searched. The board must have 
+     * an open slot and is left unchanged.
+     *
+     * @param timeLimit time limit in milliseconds; 0 for no limit
+     */
+    public int bestMove(Board board, int maxDepth, long timeLimit) {
+        long deadline = timeLimit > 0 
+                ? System.nanoTime() + timeLimit * 1000000 : Long.MAX_VALUE;
+        int empty = board.numOfSlots() * board.slotHeight() 
+                - board.numOfMoves();
+        maxDepth = Math.min(maxDepth, empty);
+        int best = -1;
+        int score = 0;
+        lastDepth = 0;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            for (AlphaBeta s: searchers) {
+                s.setDeadline(depth == 1 ? Long.MAX_VALUE : deadline);
+            }
+            int move = bestMove(board, depth);
+            if (move < 0) {
+                break;
+            }
+            best = move;
+            score = lastScore;
+            lastDepth = depth;
+            if (AlphaBeta.isDecisive(score)) {
+                break;
+            }
+        }
+        for (AlphaBeta s: searchers) {
+            s.setDeadline(Long.MAX_VALUE);
+        }
+        lastScore = score;
+        return best;
+    }
+
+    /**
+     * Search the given board to at least the given depth in plies and
+     * return the best slot to drop a checker for the side to move; -1 
+     * if the search is stopped before completion. The board must have 
+     * an open slot and is left unchanged.
+     */
+    public int bestMove(Board board, int depth) {
+        for (AlphaBeta s: searchers) {
+            s.reset();
+        }
+        int n = searchers.length;
+        Future<?>[] futures = new Future<?>[n];
+        int[] moves = new int[n];
+        for (int i = 1; i < n; i++) {
+            final int k = i;
+            final Board copy = new Board(board);
+            futures[k] = helpers.submit(() -> {
+                moves[k] = searchers[k].bestMove(copy, depth + (k & 1));
+            });
+        }
+        int best = searchers[0].bestMove(board, depth);
+        lastScore = searchers[0].score();
+        for (int i = 1; i < n; i++) {
+            searchers[i].stop();
+        }
+        for (int i = 1; i < n; i++) {
+            try {
+                futures[i].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return best;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        // prefer a completed deeper search
+        for (int i = 1; i < n; i += 2) {
+            if (moves[i] >= 0) {
+                lastScore = searchers[i].score();
+                return moves[i];
+            }
+        }
+        return best;
+    }
+
+    /** Stop the helper threads; this search can't be used afterwards. */
+    public void shutdown() {
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+    }
+}
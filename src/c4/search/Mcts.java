@@ -0,0 +1,326 @@
+package c4.search;
+
+import c4.model.Board;
+
+/**
+ * A Monte Carlo tree search using UCT. Nodes of the search tree are
+ * kept in preallocated primitive arrays indexed by node, with the 
+ * children of a node stored next to each other, so a search allocates
+ * nothing. Playouts drop checkers in random open slots on the given 
+ * board, using a xorshift generator owned by the search, and are taken
+ * back afterwards. 
+ * 
+ * The statistics of a node are those of the player who made the move 
+ * leading to it: its number of visits and its score, counting two for 
+ * a win and one for a draw. The tree is reused between searches if 
+ * the new position follows the root of the previous search and at 
+ * least half the node pool is free.
+ *
+ * A search is used by one thread at a time.
+ */
+public class Mcts {
+
+    /** Exploration constant of UCT. */
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    /** Number of playouts between checks of the time limit. */
+    private static final int POLL_INTERVAL = 256;
+
+    /** Denote a node that hasn't been expanded or has no move. */
+    private static final int NONE = -1;
+
+    /** Result of a node whose move wins the game. */
+    private static final byte WIN = 1;
+
+    /** Result of a node whose move fills the board without a win. */
+    private static final byte DRAW = 2;
+
+    /** Index of the first child of each node; NONE if not expanded. */
+    private final int[] firstChild;
+
+    /** Number of children of each node. */
+    private final byte[] numOfChildren;
+
+    /** Slot of the move leading to each node. */
+    private final byte[] move;
+
+    /** Number of visits of each node. */
+    private final int[] visits;
+
+    /** Score of each node; two per win and one per draw. */
+    private final int[] score;
+
+    /** Result of the move leading to each node; 0 if not final. */
+    private final byte[] result;
+
+    /** Number of nodes in use. */
+    private int size;
+
+    /** Root of the tree; NONE if there is no tree. */
+    private int root = NONE;
+
+    /** Key and number of moves of the root position. */
+    private long rootKey;
+    private int rootPly;
+    
+    /** Board dimensions of the root position. */
+    private int rootShape;
+
+    /** Nodes along the path of the current playout, from the root;
+     * grown to fit the board searched. */
+    private int[] path = new int[0];
+
+    /** State of the xorshift random number generator. */
+    private long seed;
+
+    /** Create a new search of the given number of nodes at most, 
+     * seeding its random numbers with the given value. */
+    public Mcts(int capacity, long seed) {
+        firstChild = new int[capacity];
+        numOfChildren = new byte[capacity];
+        move = new byte[capacity];
+        visits = new int[capacity];
+        score = new int[capacity];
+        result = new byte[capacity];
+        this.seed = seed == 0 ? 1 : seed;
+    }
+
+    /** Discard the search tree. */
+    public void clear() {
+        root = NONE;
+        size = 0;
+    }
+
+    /** Return the number of nodes in use. */
+    public int size() {
+        return size;
+    }
+
+    /** Return the number of visits of the root of the last search. */
+    public int rootVisits() {
+        return root == NONE ? 0 : visits[root];
+    }
+
+    /** Return the number of visits of the move to the given slot at 
+     * the root of the last search; 0 if not visited. */
+    public int rootVisits(int slot) {
+        int child = root == NONE ? NONE : child(root, slot);
+        return child == NONE ? 0 : visits[child];
+    }
+
+    /**
+     * Search the given board by the given number of playouts, or fewer 
+     * if the given time limit in milliseconds (0 for none) runs out, 
+     * and return the most visited slot. The board must have an open
+     * slot and is left unchanged.
+     */
+    public int bestMove(Board board, int playouts, long timeLimit) {
+        long deadline = System.nanoTime() + timeLimit * 1000000;
+        int places = board.numOfSlots() * board.slotHeight();
+        if (path.length <= places) {
+            path = new int[places + 1];
+        }
+        setRoot(board);
+        for (int i = 0; i < playouts; i++) {
+            if (timeLimit > 0 && i % POLL_INTERVAL == 0 
+                    && System.nanoTime() > deadline) {
+                break;
+            }
+            playout(board);
+        }
+        int best = NONE;
+        for (int c = firstChild[root], end = c + numOfChildren[root]; 
+                c < end; c++) {
+            if (result[c] == WIN) {
+                return move[c];
+            }
+            if (best == NONE || visits[c] > visits[best]) {
+                best = c;
+            }
+        }
+        return move[best];
+    }
+
+    /** Make the node of the given board the root, reusing the subtree
+     * of the previous root if possible. */
+    private void setRoot(Board board) {
+        int ply = board.numOfMoves();
+        int shape = (board.numOfSlots() * 16 + board.slotHeight()) * 16 
+                + board.connectLength();
+        int node = NONE;
+        if (root != NONE && shape != rootShape) {
+            root = NONE;
+        }
+        if (root != NONE && ply == rootPly && board.key() == rootKey) {
+            return;
+        }
+        if (root != NONE && ply > rootPly && ply - rootPly < path.length 
+                && size < firstChild.length / 2) {
+            // take back the moves since the previous root, if any
+            int n = ply - rootPly;
+            for (int i = n - 1; i >= 0; i--) {
+                path[i] = board.undo();
+            }
+            if (board.key() == rootKey) {
+                node = root;
+                for (int i = 0; i < n && node != NONE; i++) {
+                    node = child(node, path[i]);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                board.play(path[i]);
+            }
+        }
+        if (node == NONE) {
+            size = 0;
+            node = newNode(NONE);
+        }
+        root = node;
+        rootKey = board.key();
+        rootPly = ply;
+        rootShape = shape;
+        if (firstChild[root] == NONE) {
+            expand(root, board);
+        }
+    }
+
+    /** 
+     * Run a playout from the root: select a path of the tree by UCT,
+     * expand its leaf, drop random checkers until the game is over, 
+     * and update the statistics of the path. 
+     */
+    private void playout(Board board) {
+        int ply = board.numOfMoves();
+        int node = root;
+        int depth = 0;
+        path[depth++] = node;
+        while (result[node] == 0 && firstChild[node] != NONE) {
+            node = select(node);
+            board.play(move[node]);
+            path[depth++] = node;
+        }
+        
+        // parity of the number of moves before the winning move; -1 if a draw
+        int winner;
+        if (result[node] == WIN) {
+            winner = (board.numOfMoves() - 1) & 1;
+        } else if (result[node] == DRAW) {
+            winner = -1;
+        } else {
+            if (visits[node] > 0) {
+                expand(node, board);
+            }
+            winner = rollout(board);
+        }
+        
+        for (int i = 0; i < depth; i++) {
+            int n = path[i];
+            visits[n]++;
+            if (winner < 0) {
+                score[n] += 1;
+            } else if (((ply + i - 1) & 1) == winner) {
+                score[n] += 2;
+            }
+        }
+        while (board.numOfMoves() > ply) {
+            board.undo();
+        }
+    }
+
+    /** Return the child of the given node maximizing UCT. */
+    private int select(int node) {
+        double logVisits = Math.log(visits[node] + 1);
+        int best = NONE;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int c = firstChild[node], end = c + numOfChildren[node]; 
+                c < end; c++) {
+            int v = visits[c];
+            if (v == 0) {
+                return c;
+            }
+            double value = score[c] / (2.0 * v) 
+                    + EXPLORATION * Math.sqrt(logVisits / v);
+            if (value > bestValue) {
+                bestValue = value;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /** Create the children of the given node, one per open slot of the
+     * given board, unless the node pool is full. */
+    private void expand(int node, Board board) {
+        int n = board.numOfSlots();
+        if (size + n > firstChild.length) {
+            return;
+        }
+        int first = size;
+        boolean full = board.numOfMoves() + 1 
+                == board.numOfSlots() * board.slotHeight();
+        for (int slot = 0; slot < n; slot++) {
+            if (board.isSlotOpen(slot)) {
+                int c = newNode(slot);
+                if (board.isWinningMove(slot)) {
+                    result[c] = WIN;
+                } else if (full) {
+                    result[c] = DRAW;
+                }
+            }
+        }
+        firstChild[node] = first;
+        numOfChildren[node] = (byte) (size - first);
+    }
+
+    /** 
+     * Drop random checkers on the given board until the game is over
+     * and return the parity of the number of moves before the winning 
+     * move; -1 if a draw. 
+     */
+    private int rollout(Board board) {
+        int n = board.numOfSlots();
+        while (!board.isFull()) {
+            int slot;
+            do {
+                long x = seed;
+                x ^= x << 13;
+                x ^= x >>> 7;
+                x ^= x << 17;
+                seed = x;
+                slot = (int) ((x >>> 32) * n >>> 32);
+            } while (!board.isSlotOpen(slot));
+            if (board.isWinningMove(slot)) {
+                return board.numOfMoves() & 1;
+            }
+            board.play(slot);
+        }
+        return -1;
+    }
+
+    /** Return the child of the given node moving to the given slot;
+     * NONE if not found. */
+    private int child(int node, int slot) {
+        if (firstChild[node] == NONE) {
+            return NONE;
+        }
+        for (int c = firstChild[node], end = c + numOfChildren[node]; 
+                c < end; c++) {
+            if (move[c] == slot) {
+                return c;
+            }
+        }
+        return NONE;
+    }
+
+    /** Allocate a new node of the given move. */
+    private int newNode(int slot) {
+        int node = size++;
+        firstChild[node] = NONE;
+        numOfChildren[node] = 0;
+        move[node] = (byte) slot;
+        visits[node] = 0;
+        score[node] = 0;
+        result[node] = 0;
+        return node;
+    }
+}
@@ -0,0 +1,49 @@
+package c4.search;
+
+import c4.model.Board;
+
+/**
+ * Measure how parallel Monte Carlo tree search scales with the number 
+ * of threads by timing a fixed number of playouts on each position of
+ * {@link SmpScaling#POSITIONS}, in both modes, with 1, 2, 4, 8 and 16 
+ * threads. Usage: <code>MctsScaling [playouts]</code>
+ */
+public class MctsScaling {
+
+    /** Thread counts to measure. */
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    /** Number of nodes of a search tree at most. */
+    private static final int CAPACITY = 1 << 20;
+
+    public static void main(String[] args) {
+        int playouts = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        System.out.printf("%d playouts per position, %d cores%n", playouts, 
+                Runtime.getRuntime().availableProcessors());
+        System.out.println("mode  threads     ms   playouts/s   speedup");
+        for (ParallelMcts.Mode mode: ParallelMcts.Mode.values()) {
+            double base = 0;
+            for (int threads: THREADS) {
+                ParallelMcts search = new ParallelMcts(mode, threads, 
+                        CAPACITY, 1);
+                long total = 0;
+                long start = System.nanoTime();
+                for (String moves: SmpScaling.POSITIONS) {
+                    Board board = new Board();
+                    board.play(moves);
+                    search.clear();
+                    search.bestMove(board, playouts, 0);
+                    total += search.playouts();
+                }
+                long ms = Math.max((System.nanoTime() - start) / 1000000, 1);
+                search.shutdown();
+                double rate = total * 1000.0 / ms;
+                if (base == 0) {
+                    base = rate;
+                }
+                System.out.printf("%-5s %7d %6d %12.0f %9.2f%n", mode, 
+                        threads, ms, rate, rate / base);
+            }
+        }
+    }
+}
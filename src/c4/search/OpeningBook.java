@@ -0,0 +1,183 @@
+package c4.search;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import c4.model.Board;
+
+/**
+ * A precomputed book of the scores of all positions up to a number of
+ * plies. A position and its left-right mirror image share a single
+ * record keyed on {@link Board#canonicalKey()}.
+ * 
+ * A book file is a {@link RecordFile} whose header holds the number 
+ * of plies and whose records hold the score of each position for the 
+ * side to move. A book is looked up by binary search on a read-only 
+ * memory mapping of its file, so it takes no heap space and is shared
+ * by all processes reading the same file.
+ *
+ * Usage of the builder tool: 
+ * <code>OpeningBook file plies [depth]</code>, which scores each 
+ * position by an alpha-beta search of the given depth.
+ */
+public class OpeningBook {
+
+    /** Magic number at the start of a book file; "C4BK". */
+    private static final int MAGIC = 0x4334424B;
+
+    /** Returned by {@link #score(Board)} for a position not in a book. */
+    public static final int NOT_FOUND = RecordFile.NOT_FOUND;
+
+    /** Records of this book, mapped from its file. */
+    private final RecordFile records;
+
+    /** 
+     * Open the book stored in the given file.
+     *
+     * @throws IOException if the file can't be read or isn't a book
+     */
+    public OpeningBook(Path file) throws IOException {
+        records = new RecordFile(file, MAGIC, "an opening book");
+    }
+
+    /** Return the number of positions in this book. */
+    public int size() {
+        return records.size();
+    }
+
+    /** Return the number of plies covered by this book. */
+    public int plies() {
+        return records.parameter();
+    }
+
+    /** 
+     * Return the score of the given board for the side to move; 
+     * NOT_FOUND if the position isn't in this book. A book covers 
+     * standard boards only.
+     */
+    public int score(Board board) {
+        if (!board.isStandard()) {
+            return NOT_FOUND;
+        }
+        return records.find(board.canonicalKey());
+    }
+
+    /**
+     * Return the best slot to drop a checker for the side to move of 
+     * the given board according to this book; -1 if any position 
+     * resulting from a move isn't in this book. The board is left 
+     * unchanged.
+     */
+    public int bestMove(Board board) {
+        int best = -1;
+        int bestScore = Integer.MAX_VALUE;
+        for (int slot = 0; slot < board.numOfSlots(); slot++) {
+            if (board.isSlotOpen(slot)) {
+                if (board.isWinningMove(slot)) {
+                    return slot;
+                }
+                board.play(slot);
+                int score = board.isFull() ? 0 : score(board);
+                board.undo();
+                if (score == NOT_FOUND) {
+                    return -1;
+                }
+                // prefer the center on ties
+                int n = board.numOfSlots();
+                if (score < bestScore || (score == bestScore 
+                        && Math.abs(2 * slot - n + 1) < Math.abs(2 * best - n + 1))) {
+                    best = slot;
+                    bestScore = score;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Build a book of all positions reachable in up to the given number 
+     * of plies, except those already won, scoring each by a search of 
+     * the given depth, and write it to the given file.
+     */
+    public static void build(Path file, int plies, int depth) 
+            throws IOException {
+        Builder builder = new Builder(depth);
+        builder.visit(new Board(), plies);
+        RecordFile.write(file, MAGIC, plies, builder.records, builder.size);
+    }
+
+    /** Enumerate and score positions for a new book. */
+    private static class Builder {
+
+        /** Search depth to score positions. */
+        private final int depth;
+
+        /** Search to score positions. */
+        private final AlphaBeta search = 
+                new AlphaBeta(new TranspositionTable(256));
+
+        /** Keys of the positions visited so far. */
+        private final Set<Long> visited = new HashSet<>();
+
+        /** Records built so far; the first size elements are used. */
+        private long[] records = new long[1024];
+
+        /** Number of records built so far. */
+        private int size;
+
+        /** Create a new builder scoring by a search of the given depth. */
+        Builder(int depth) {
+            this.depth = depth;
+        }
+
+        /** Visit the given position and its successors up to the given
+         * number of plies. */
+        void visit(Board board, int plies) {
+            long key = board.canonicalKey();
+            if (board.isFull() || !visited.add(key)) {
+                return;
+            }
+            search.bestMove(board, depth);
+            add(RecordFile.record(key, search.score()));
+            if (plies == board.numOfMoves()) {
+                return;
+            }
+            for (int slot = 0; slot < board.numOfSlots(); slot++) {
+                if (board.isSlotOpen(slot)) {
+                    int y = board.play(slot);
+                    if (!board.lastMoveWins(slot, y)) {
+                        visit(board, plies);
+                    }
+                    board.undo();
+                }
+            }
+        }
+
+        /** Add the given record. */
+        private void add(long record) {
+            if (size == records.length) {
+                records = Arrays.copyOf(records, size * 2);
+            }
+            records[size++] = record;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: OpeningBook file plies [depth]");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[0]);
+        int plies = Integer.parseInt(args[1]);
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+        long start = System.currentTimeMillis();
+        build(file, plies, depth);
+        OpeningBook book = new OpeningBook(file);
+        System.out.printf("%d positions in %d ms%n", book.size(), 
+                System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,427 @@
+package c4.search;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import c4.model.Board;
+
+/**
+ * A Monte Carlo tree search run by several threads, each on its own copy
+ * of the board. The calling thread is one of the searching threads.
+ * 
+ * In root parallelism, every thread grows an independent {@link Mcts}
+ * tree of the same position, and the visits of the root moves are 
+ * summed at the end. In tree parallelism, all threads grow a single 
+ * shared tree whose counters are updated atomically. A thread passing 
+ * through a node counts its visit right away, as a loss until its 
+ * playout ends, so that other threads prefer other paths meanwhile
+ * (virtual loss). The shared tree is rebuilt for each search.
+ * 
+ * The budget of playouts is shared by all threads.
+ */
+public class ParallelMcts {
+
+    /** Way of sharing the work among threads. */
+    public enum Mode {
+        /** Independent trees merged at the end. */
+        ROOT,
+        
+        /** A single tree shared by all threads. */
+        TREE
+    }
+
+    /** Exploration constant of UCT. */
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    /** Number of playouts claimed from the budget at a time. */
+    private static final int CHUNK = 64;
+
+    /** Denote a node that hasn't been expanded or has no move. */
+    private static final int NONE = -1;
+
+    /** Denote a node being expanded by another thread. */
+    private static final int EXPANDING = -2;
+
+    /** Result of a node whose move wins the game. */
+    private static final byte WIN = 1;
+
+    /** Result of a node whose move fills the board without a win. */
+    private static final byte DRAW = 2;
+
+    /** Way of sharing the work. */
+    private final Mode mode;
+
+    /** Number of searching threads. */
+    private final int threads;
+
+    /** Independent trees of root parallelism; null otherwise. */
+    private final Mcts[] trees;
+
+    /** Runs the helper threads; null if there is a single thread. */
+    private final ExecutorService helpers;
+
+    /** Shared tree of tree parallelism; the arrays are null otherwise.
+     * See {@link Mcts} for the meaning of each array. */
+    private final AtomicIntegerArray firstChild;
+    private final byte[] numOfChildren;
+    private final byte[] move;
+    private final AtomicIntegerArray visits;
+    private final AtomicIntegerArray score;
+    private final byte[] result;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** Playouts left in the budget of the current search. */
+    private final AtomicInteger budget = new AtomicInteger();
+
+    /** Number of playouts of the last search. */
+    private final AtomicInteger playouts = new AtomicInteger();
+
+    /** Have searches been stopped until resumed? */
+    private volatile boolean stopped;
+
+    /** Seed of the random numbers of the next search. */
+    private long seed;
+
+    /**
+     * Create a new search of the given mode and number of threads, each
+     * tree having the given number of nodes at most, seeding its random
+     * numbers with the given value.
+     */
+    public ParallelMcts(Mode mode, int threads, int capacity, long seed) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads must be positive: " + threads);
+        }
+        this.mode = mode;
+        this.threads = threads;
+        this.seed = seed;
+        if (mode == Mode.ROOT) {
+            trees = new Mcts[threads];
+            for (int i = 0; i < threads; i++) {
+                trees[i] = new Mcts(capacity, seed + i * 0x9E3779B97F4A7C15L);
+            }
+            firstChild = visits = score = null;
+            numOfChildren = move = result = null;
+        } else {
+            trees = null;
+            firstChild = new AtomicIntegerArray(capacity);
+            numOfChildren = new byte[capacity];
+            move = new byte[capacity];
+            visits = new AtomicIntegerArray(capacity);
+            score = new AtomicIntegerArray(capacity);
+            result = new byte[capacity];
+        }
+        helpers = threads == 1 ? null 
+                : Executors.newFixedThreadPool(threads - 1, r -> {
+                    Thread t = new Thread(r, "mcts");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /** Return the mode of this search. */
+    public Mode mode() {
+        return mode;
+    }
+
+    /** Return the number of threads of this search. */
+    public int threads() {
+        return threads;
+    }
+
+    /** Return the number of playouts of the last search. */
+    public int playouts() {
+        return playouts.get();
+    }
+
+    /** 
+     * Make the current search, if any, return after the playouts being
+     * played, and make searches fail until {@link #resume()} is called.
+     */
+    public void stop() {
+        stopped = true;
+        budget.set(0);
+    }
+
+    /** Allow searches again after {@link #stop()}. */
+    public void resume() {
+        stopped = false;
+    }
+
+    /** Discard the search trees. */
+    public void clear() {
+        if (trees != null) {
+            for (Mcts t: trees) {
+                t.clear();
+            }
+        }
+        size.set(0);
+    }
+
+    /**
+     * Search the given board by the given number of playouts in total, 
+     * or fewer if the given time limit in milliseconds (0 for none) runs
+     * out, and return the most visited slot; -1 if searches have been
+     * stopped. The board must have an open slot and is left unchanged.
+     */
+    public int bestMove(Board board, int playouts, long timeLimit) {
+        if (stopped) {
+            return -1;
+        }
+        for (int slot = 0; slot < board.numOfSlots(); slot++) {
+            if (board.isSlotOpen(slot) && board.isWinningMove(slot)) {
+                return slot;
+            }
+        }
+        long deadline = timeLimit > 0 
+                ? System.nanoTime() + timeLimit * 1000000 : Long.MAX_VALUE;
+        budget.set(playouts);
+        this.playouts.set(0);
+        if (mode == Mode.TREE) {
+            size.set(0);
+            int root = newNode(NONE);
+            expand(root, board);
+        }
+        Future<?>[] futures = new Future<?>[threads];
+        for (int i = 1; i < threads; i++) {
+            final int k = i;
+            final Board copy = new Board(board);
+            final long s = nextSeed();
+            futures[k] = helpers.submit(() -> search(k, copy, deadline, s));
+        }
+        search(0, board, deadline, nextSeed());
+        for (int i = 1; i < threads; i++) {
+            try {
+                futures[i].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return mostVisited(board);
+    }
+
+    /** Stop the helper threads; this search can't be used afterwards. */
+    public void shutdown() {
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+    }
+
+    /** Run the playouts of the given thread on the given board until 
+     * the budget or time runs out. */
+    private void search(int thread, Board board, long deadline, long seed) {
+        Worker worker = mode == Mode.TREE ? new Worker(board, seed) : null;
+        while (!stopped && System.nanoTime() < deadline) {
+            int n = Math.min(CHUNK, budget.getAndAdd(-CHUNK));
+            if (n <= 0) {
+                break;
+            }
+            if (mode == Mode.ROOT) {
+                // the time limit is checked by chunk here
+                trees[thread].bestMove(board, n, 0);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    worker.playout(board);
+                }
+            }
+            playouts.addAndGet(n);
+        }
+    }
+
+    /** Return the open slot of the given board visited most by the 
+     * last search. */
+    private int mostVisited(Board board) {
+        int best = -1;
+        long bestVisits = -1;
+        for (int slot = 0; slot < board.numOfSlots(); slot++) {
+            if (!board.isSlotOpen(slot)) {
+                continue;
+            }
+            long v = 0;
+            if (mode == Mode.ROOT) {
+                for (Mcts t: trees) {
+                    v += t.rootVisits(slot);
+                }
+            } else {
+                for (int c = firstChild.get(0), end = c + numOfChildren[0]; 
+                        c < end; c++) {
+                    if (move[c] == slot) {
+                        v = visits.get(c);
+                    }
+                }
+            }
+            if (v > bestVisits) {
+                bestVisits = v;
+                best = slot;
+            }
+        }
+        return best;
+    }
+
+    /** Return the seed of the random numbers of a new thread. */
+    private long nextSeed() {
+        seed += 0x9E3779B97F4A7C15L;
+        return seed == 0 ? 1 : seed;
+    }
+
+    /** 
+     * Create the children of the given node of the shared tree, one 
+     * per open slot of the given board, unless another thread is doing
+     * so or the tree is full. The children are published by setting 
+     * the first child of the node last.
+     */
+    private void expand(int node, Board board) {
+        if (!firstChild.compareAndSet(node, NONE, EXPANDING)) {
+            return;
+        }
+        int n = 0;
+        for (int slot = 0; slot < board.numOfSlots(); slot++) {
+            if (board.isSlotOpen(slot)) {
+                n++;
+            }
+        }
+        int first = size.getAndAdd(n);
+        if (first + n > move.length) {
+            firstChild.set(node, NONE);
+            return;
+        }
+        boolean full = board.numOfMoves() + 1 
+                == board.numOfSlots() * board.slotHeight();
+        int c = first;
+        for (int slot = 0; slot < board.numOfSlots(); slot++) {
+            if (board.isSlotOpen(slot)) {
+                initNode(c, slot);
+                if (board.isWinningMove(slot)) {
+                    result[c] = WIN;
+                } else if (full) {
+                    result[c] = DRAW;
+                }
+                c++;
+            }
+        }
+        numOfChildren[node] = (byte) n;
+        firstChild.set(node, first);
+    }
+
+    /** Allocate a new node of the shared tree of the given move. */
+    private int newNode(int slot) {
+        int node = size.getAndIncrement();
+        initNode(node, slot);
+        return node;
+    }
+
+    /** Initialize the given node of the shared tree. */
+    private void initNode(int node, int slot) {
+        numOfChildren[node] = 0;
+        move[node] = (byte) slot;
+        visits.set(node, 0);
+        score.set(node, 0);
+        result[node] = 0;
+        firstChild.set(node, NONE);
+    }
+
+    /** Runs playouts of a thread in the shared tree. */
+    private class Worker {
+
+        /** Nodes along the path of the current playout, from the root. */
+        private final int[] path;
+
+        /** State of the xorshift random number generator. */
+        private long seed;
+
+        Worker(Board board, long seed) {
+            this.path = new int[board.numOfSlots() * board.slotHeight() + 1];
+            this.seed = seed;
+        }
+
+        /** Run a playout from the root of the shared tree; see 
+         * {@link Mcts} for the steps. */
+        void playout(Board board) {
+            int ply = board.numOfMoves();
+            int node = 0;
+            int depth = 0;
+            visits.incrementAndGet(node);
+            path[depth++] = node;
+            while (result[node] == 0 && firstChild.get(node) >= 0) {
+                node = select(node);
+                visits.incrementAndGet(node); // virtual loss
+                board.play(move[node]);
+                path[depth++] = node;
+            }
+
+            int winner;
+            if (result[node] == WIN) {
+                winner = (board.numOfMoves() - 1) & 1;
+            } else if (result[node] == DRAW) {
+                winner = -1;
+            } else {
+                if (visits.get(node) > 1) {
+                    expand(node, board);
+                }
+                winner = rollout(board);
+            }
+
+            for (int i = 0; i < depth; i++) {
+                int n = path[i];
+                if (winner < 0) {
+                    score.addAndGet(n, 1);
+                } else if (((ply + i - 1) & 1) == winner) {
+                    score.addAndGet(n, 2);
+                }
+            }
+            while (board.numOfMoves() > ply) {
+                board.undo();
+            }
+        }
+
+        /** Return the child of the given node maximizing UCT. */
+        private int select(int node) {
+            double logVisits = Math.log(visits.get(node) + 1);
+            int best = NONE;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int c = firstChild.get(node), end = c + numOfChildren[node]; 
+                    c < end; c++) {
+                int v = visits.get(c);
+                if (v == 0) {
+                    return c;
+                }
+                double value = score.get(c) / (2.0 * v) 
+                        + EXPLORATION * Math.sqrt(logVisits / v);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /** Drop random checkers until the game is over; see 
+         * {@link Mcts} for the result. */
+        private int rollout(Board board) {
+            int n = board.numOfSlots();
+            while (!board.isFull()) {
+                int slot;
+                do {
+                    long x = seed;
+                    x ^= x << 13;
+                    x ^= x >>> 7;
+                    x ^= x << 17;
+                    seed = x;
+                    slot = (int) ((x >>> 32) * n >>> 32);
+                } while (!board.isSlotOpen(slot));
+                if (board.isWinningMove(slot)) {
+                    return board.numOfMoves() & 1;
+                }
+                board.play(slot);
+            }
+            return -1;
+        }
+    }
+}
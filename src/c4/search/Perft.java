@@ -0,0 +1,233 @@
+package c4.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import c4.model.Board;
+
+/**
+ * A position enumerator counting the positions reachable from a board
+ * in a given number of plies, to validate and benchmark board 
+ * implementations. A position in which the game is over, by a win 
+ * or a full board, is counted but not expanded further. The counts
+ * from the empty board are checked against the known values. Before
+ * counting, the win and threat checks of boards whose rows span 64 
+ * bits or more are checked against a plain grid in random games.
+ * 
+ * Usage: <code>Perft [maxDepth [threads]]</code>
+ */
+public class Perft {
+
+    /** 
+     * Known counts of the positions reachable from the empty 7x6 board
+     * in 0, 1, 2, ... plies. 
+     */
+    public static final long[] EXPECTED = {
+        1L, 7L, 49L, 343L, 2401L, 16807L, 117649L, 823536L, 5673234L, 
+        39394572L, 268031646L
+    };
+
+    /** 
+     * Shapes of single-word boards, as numbers of slots, places in a
+     * slot and checkers in a winning row, whose rows span 64 bits or 
+     * more, so that shifting a bitboard along a row may wrap around.
+     */
+    private static final int[][] LONG_SHAPES = {
+        {4, 14, 5}, {4, 15, 5}, {4, 15, 8}, {4, 15, 15}, {5, 11, 6}, 
+        {5, 11, 7}, {6, 9, 7}
+    };
+
+    /** Number of random games played on each of LONG_SHAPES. */
+    private static final int SHAPE_GAMES = 200;
+
+    /** Number of plies expanded by the calling thread in a parallel count. */
+    private static final int SPLIT_DEPTH = 2;
+
+    /** Return the number of positions reachable from the given board in
+     * exactly the given number of plies. The board is left unchanged. */
+    public static long perft(Board board, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long n = 0;
+        for (int slot = 0; slot < board.numOfSlots(); slot++) {
+            if (board.isSlotOpen(slot)) {
+                if (depth == 1) {
+                    n++;
+                } else {
+                    int y = board.play(slot);
+                    if (!board.lastMoveWins(slot, y) && !board.isFull()) {
+                        n += perft(board, depth - 1);
+                    }
+                    board.undo();
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Return the number of positions reachable from the given board in
+     * exactly the given number of plies, counting the subtrees of the 
+     * positions a few plies deep on the given pool of threads. 
+     * The board is left unchanged.
+     */
+    public static long perft(Board board, int depth, ExecutorService pool) 
+            throws InterruptedException {
+        if (depth <= SPLIT_DEPTH) {
+            return perft(board, depth);
+        }
+        List<Future<Long>> counts = new ArrayList<>();
+        split(board, SPLIT_DEPTH, depth, pool, counts);
+        long n = 0;
+        try {
+            for (Future<Long> count: counts) {
+                n += count.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return n;
+    }
+
+    /** Submit the counts of the subtrees of the positions the given
+     * number of plies below the given board. */
+    private static void split(Board board, int plies, int depth, 
+            ExecutorService pool, List<Future<Long>> counts) {
+        if (plies == 0) {
+            Board copy = new Board(board);
+            counts.add(pool.submit(() -> perft(copy, depth)));
+            return;
+        }
+        for (int slot = 0; slot < board.numOfSlots(); slot++) {
+            if (board.isSlotOpen(slot)) {
+                int y = board.play(slot);
+                if (!board.lastMoveWins(slot, y) && !board.isFull()) {
+                    split(board, plies - 1, depth - 1, pool, counts);
+                } else if (depth == 1) {
+                    counts.add(pool.submit(() -> 1L));
+                }
+                board.undo();
+            }
+        }
+    }
+
+    /**
+     * Play the given number of random games on a board of the given 
+     * shape and return the number of positions in which the win or 
+     * threat checks of the board disagree with those of a plain grid.
+     */
+    public static int checkRows(int numOfSlots, int slotHeight, 
+            int connect, int games, Random random) {
+        Board board = new Board(numOfSlots, slotHeight, connect);
+        int errors = 0;
+        for (int g = 0; g < games; g++) {
+            board.clear();
+            // 1 or 2 for the checkers of the first or second side
+            int[][] grid = new int[numOfSlots][slotHeight];
+            boolean over = false;
+            while (!over) {
+                int slot;
+                do {
+                    slot = random.nextInt(numOfSlots);
+                } while (!board.isSlotOpen(slot));
+                int side = board.numOfMoves() % 2 + 1;
+                int y = board.play(slot);
+                grid[slot][y] = side;
+                over = rowLength(grid, slot, y, side) >= connect;
+                if (board.lastMoveWins(slot, y) != over) {
+                    errors++;
+                }
+                if (board.countThreats() 
+                        != countThreats(grid, 3 - side, connect)
+                        || board.countOpponentThreats() 
+                        != countThreats(grid, side, connect)) {
+                    errors++;
+                }
+                over |= board.isFull();
+            }
+        }
+        return errors;
+    }
+
+    /** Return the number of empty places of the given grid that would
+     * complete a row of the given length for the given side. */
+    private static int countThreats(int[][] grid, int side, int connect) {
+        int n = 0;
+        for (int x = 0; x < grid.length; x++) {
+            for (int y = 0; y < grid[x].length; y++) {
+                if (grid[x][y] == 0) {
+                    grid[x][y] = side;
+                    if (rowLength(grid, x, y, side) >= connect) {
+                        n++;
+                    }
+                    grid[x][y] = 0;
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Return the length of the longest row of the given side through
+     * the given place of the given grid, where y counts from the top. */
+    private static int rowLength(int[][] grid, int x, int y, int side) {
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        int longest = 0;
+        for (int[] d: directions) {
+            int n = 1;
+            for (int sign = -1; sign <= 1; sign += 2) {
+                int i = x + sign * d[0];
+                int j = y + sign * d[1];
+                while (i >= 0 && i < grid.length && j >= 0 
+                        && j < grid[i].length && grid[i][j] == side) {
+                    n++;
+                    i += sign * d[0];
+                    j += sign * d[1];
+                }
+            }
+            longest = Math.max(longest, n);
+        }
+        return longest;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : 9;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) 
+                : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        boolean ok = true;
+        Random random = new Random(1);
+        for (int[] shape: LONG_SHAPES) {
+            int errors = checkRows(shape[0], shape[1], shape[2], 
+                    SHAPE_GAMES, random);
+            System.out.printf("%dx%d connect %d: %s%n", shape[0], shape[1],
+                    shape[2], errors == 0 ? "ok" : errors + " FAILED");
+            ok &= errors == 0;
+        }
+        System.out.printf("%5s %14s %10s %14s %s%n", "depth", "positions", 
+                "ms", "positions/s", "check");
+        try {
+            for (int depth = 1; depth <= maxDepth; depth++) {
+                long start = System.nanoTime();
+                long n = threads > 1 ? perft(new Board(), depth, pool) 
+                        : perft(new Board(), depth);
+                long nanos = Math.max(System.nanoTime() - start, 1);
+                String check = depth >= EXPECTED.length ? "-" 
+                        : (n == EXPECTED[depth] ? "ok" : "FAILED");
+                ok &= !check.equals("FAILED");
+                System.out.printf("%5d %14d %10d %14.0f %s%n", depth, n, 
+                        nanos / 1000000, n * 1e9 / nanos, check);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+}
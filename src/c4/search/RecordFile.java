@@ -0,0 +1,114 @@
+package c4.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A read-only file of position records, such as an opening book or an
+ * endgame database. A file consists of an 8-byte header, a magic
+ * number followed by a parameter of the file, and records sorted in
+ * ascending order. Each record is a <code>long</code> holding a
+ * position key in its upper 50 bits and a signed value in its lower
+ * 14 bits. A file is looked up by binary search on a read-only memory
+ * mapping, so it takes no heap space and is shared by all processes
+ * reading the same file.
+ */
+class RecordFile {
+
+    /** Size of the header of a file in bytes. */
+    private static final int HEADER_SIZE = 8;
+
+    /** Number of bits of a record holding a value. */
+    private static final int VALUE_BITS = 14;
+
+    /** Returned by {@link #find(long)} for a key not in a file. */
+    static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    /** Records of this file, mapped from it. */
+    private final MappedByteBuffer records;
+
+    /** Number of records of this file. */
+    private final int size;
+
+    /** Parameter stored in the header of this file. */
+    private final int parameter;
+
+    /**
+     * Open the given file, which must start with the given magic number.
+     *
+     * @param kind kind of the file, for error messages
+     * @throws IOException if the file can't be read or is of another kind
+     */
+    RecordFile(Path file, int magic, String kind) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            records = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+        }
+        if (records.capacity() < HEADER_SIZE
+                || records.getInt(0) != magic
+                || (records.capacity() - HEADER_SIZE) % Long.BYTES != 0) {
+            throw new IOException("Not " + kind + ": " + file);
+        }
+        parameter = records.getInt(4);
+        size = (records.capacity() - HEADER_SIZE) / Long.BYTES;
+    }
+
+    /** Return the number of records of this file. */
+    int size() {
+        return size;
+    }
+
+    /** Return the parameter stored in the header of this file. */
+    int parameter() {
+        return parameter;
+    }
+
+    /** Return the value of the given key; NOT_FOUND if not in this file. */
+    int find(long key) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long record = records.getLong(HEADER_SIZE + mid * Long.BYTES);
+            long k = record >>> VALUE_BITS;
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return (int) ((record << (64 - VALUE_BITS)) >> (64 - VALUE_BITS));
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /** Return the record of the given key and value. */
+    static long record(long key, int value) {
+        return key << VALUE_BITS | (value & ((1L << VALUE_BITS) - 1));
+    }
+
+    /**
+     * Write a file of the given magic number, parameter, and the first
+     * given number of the given records, which are sorted in place.
+     */
+    static void write(Path file, int magic, int parameter, long[] records,
+            int size) throws IOException {
+        Arrays.sort(records, 0, size);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(magic);
+            out.writeInt(parameter);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(records[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package c4.search;
+
+import c4.model.Board;
+
+/**
+ * Measure how Lazy SMP search scales with the number of threads by
+ * timing fixed-depth searches of a fixed suite of midgame positions
+ * with 1, 2, 4, 8 and 16 threads. Each run starts with an empty 
+ * transposition table. Usage: <code>SmpScaling [depth [tableSizeMb]]</code>
+ */
+public class SmpScaling {
+
+    /** Midgame positions as sequences of 1-based slot indices. */
+    public static final String[] POSITIONS = {
+        "4453", "44444362", "3345567", "12344321", "5544321", 
+        "4343553", "443322", "7654321", "3434544", "2252224"
+    };
+
+    /** Thread counts to measure. */
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 14;
+        int tableSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        System.out.printf("depth %d, table %d MB, %d cores%n", depth, 
+                tableSize, Runtime.getRuntime().availableProcessors());
+        System.out.println("threads     ms   speedup      nodes");
+        long base = 0;
+        for (int threads: THREADS) {
+            TranspositionTable table = new TranspositionTable(tableSize);
+            LazySmp search = new LazySmp(table, threads);
+            long nodes = 0;
+            long start = System.nanoTime();
+            for (String moves: POSITIONS) {
+                Board board = new Board();
+                board.play(moves);
+                table.clear();
+                search.bestMove(board, depth);
+                nodes += search.nodes();
+            }
+            long ms = (System.nanoTime() - start) / 1000000;
+            search.shutdown();
+            if (base == 0) {
+                base = Math.max(ms, 1);
+            }
+            System.out.printf("%7d %6d %9.2f %10d%n", threads, ms, 
+                    (double) base / Math.max(ms, 1), nodes);
+        }
+    }
+}
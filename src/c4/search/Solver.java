@@ -0,0 +1,505 @@
+package c4.search;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+
+import c4.model.Board;
+
+/**
+ * A perfect-play solver of a {@link Board} of up to 64 bits.
+ * The exact value of a position is found by a series of null-window
+ * negamax searches narrowing the range of possible scores. The search
+ * works on the bitboards of the position directly: a move that lets
+ * the opponent win at once is never tried, a forced move to block
+ * the opponent's threat is the only move tried, and moves are tried in
+ * the order of the numbers of threats they create. Bounds found are
+ * cached in a transposition table keyed on the canonical key of a
+ * position, and exact scores of positions with few empty places may
+ * be looked up in an {@link EndgameDatabase}.
+ *
+ * A score is that of the side to move. A win by the checker completing
+ * a row as the p-th checker of a game on a board of n places is scored
+ * (n + 2 - p) / 2, so that faster wins score higher; a loss is scored
+ * the negated score of the opponent's win, and a draw 0. A result
+ * also tells the distance to the end of the game in plies, assuming
+ * the winner wins as fast and the loser loses as slowly as possible.
+ * A weak result only tells if the position is won, drawn or lost,
+ * which takes much less search.
+ *
+ * A solver is used by one thread at a time.
+ *
+ * Usage: <code>Solver [database]</code>, which reads positions from
+ * the standard input, one sequence of 1-based slot indices per line,
+ * and prints the result of each.
+ */
+public class Solver {
+
+    /** Outcome of a game for the side to move with perfect play. */
+    public enum Outcome {
+        WIN, DRAW, LOSS
+    }
+
+    /** Default size of the transposition table of a solver in MB. */
+    public static final int DEFAULT_TABLE_SIZE = 16;
+
+    /** Cache of search results. */
+    private final TranspositionTable table;
+
+    /** Scores of endgame positions; null if none. */
+    private EndgameDatabase database;
+
+    /** Database used for the current board; null if none fits it. */
+    private EndgameDatabase boardDatabase;
+
+    /** Number of slots of the current board. */
+    private int numOfSlots;
+
+    /** Number of places in a slot of the current board. */
+    private int slotHeight;
+
+    /** Length of a winning row of the current board. */
+    private int connect;
+
+    /** Number of places of the current board. */
+    private int cells;
+
+    /** Bitboard of the bottom place of every slot. */
+    private long bottomMask;
+
+    /** Bitboard of all places. */
+    private long boardMask;
+
+    /** Bitboards of the places of each slot, in center-first order. */
+    private long[] slotMasks = new long[0];
+
+    /** Moves tried at each ply, as bitboards; reused between searches. */
+    private long[][] moves = new long[0][];
+
+    /** Ordering scores of the moves tried at each ply. */
+    private int[][] moveScores = new int[0][];
+
+    /** Number of positions visited since the last reset. */
+    private long nodes;
+
+    /** Create a new solver with a table of the default size. */
+    public Solver() {
+        this(new TranspositionTable(DEFAULT_TABLE_SIZE));
+    }
+
+    /** Create a new solver caching its results in the given table. */
+    public Solver(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Look up the exact scores of positions with few empty places in
+     * the given database; null for none.
+     */
+    public void setEndgameDatabase(EndgameDatabase database) {
+        this.database = database;
+    }
+
+    /** Return the number of positions visited since the last reset. */
+    public long nodes() {
+        return nodes;
+    }
+
+    /** Clear the node count. */
+    public void reset() {
+        nodes = 0;
+    }
+
+    /** Forget the positions solved so far. */
+    public void clear() {
+        table.clear();
+    }
+
+    /**
+     * Return the exact result of the given board for the side to move.
+     * The game must not be over by a win; the board is left unchanged.
+     *
+     * @throws IllegalArgumentException if the board takes more than 64 bits
+     */
+    public Result solve(Board board) {
+        return solve(board, false);
+    }
+
+    /**
+     * Return the weak result of the given board for the side to move,
+     * telling only its outcome.
+     *
+     * @see #solve(Board)
+     */
+    public Result solveWeak(Board board) {
+        return solve(board, true);
+    }
+
+    /** Return the result of the given board, weak or exact. */
+    private Result solve(Board board, boolean weak) {
+        load(board);
+        long current = board.bitboard();
+        long mask = board.occupiedBitboard();
+        int n = Long.bitCount(mask);
+        int score = solve(current, mask, n, weak);
+        return new Result(score, weak ? -1 : distance(score, n));
+    }
+
+    /**
+     * Return the exact score of the given board for the side to move.
+     *
+     * @see #solve(Board)
+     */
+    public int score(Board board) {
+        return solve(board).score();
+    }
+
+    /**
+     * Return a slot to drop a checker for the side to move of the given
+     * board with perfect play, winning as fast or losing as slowly as
+     * possible; the center-most one of equally good slots. The board
+     * must have an open slot and is left unchanged.
+     *
+     * @see #solve(Board)
+     */
+    public int bestMove(Board board) {
+        load(board);
+        long current = board.bitboard();
+        long mask = board.occupiedBitboard();
+        int n = Long.bitCount(mask);
+        long possible = possible(mask);
+        long wins = winning(current, mask) & possible;
+        long candidates = wins != 0 ? wins : nonLosingMoves(current, mask);
+        if (candidates == 0) {
+            candidates = possible; // lost anyway
+        }
+        int best = -1;
+        if (wins == 0 && n < cells - 1) {
+            int score = solve(current, mask, n, false);
+            for (int i = 0; i < slotMasks.length && best < 0; i++) {
+                long move = candidates & slotMasks[i];
+                // the move keeps the score if the opponent can't do better
+                if (move != 0 && solve(current ^ mask, mask | move, n + 1,
+                        -score, -score + 1) <= -score) {
+                    best = i;
+                }
+            }
+        }
+        for (int i = 0; i < slotMasks.length && best < 0; i++) {
+            if ((candidates & slotMasks[i]) != 0) {
+                best = i;
+            }
+        }
+        return slotOf(slotMasks[best]);
+    }
+
+    /** Set up the geometry of the given board. */
+    private void load(Board board) {
+        if (board.numOfSlots() * (board.slotHeight() + 1) > 64) {
+            throw new IllegalArgumentException(
+                    "Can't solve a board of more than 64 bits: "
+                    + board.numOfSlots() + "x" + board.slotHeight());
+        }
+        boardDatabase = board.isStandard() ? database : null;
+        if (board.numOfSlots() == numOfSlots
+                && board.slotHeight() == slotHeight
+                && board.connectLength() == connect) {
+            return;
+        }
+        table.clear(); // keys of other board shapes denote other positions
+        numOfSlots = board.numOfSlots();
+        slotHeight = board.slotHeight();
+        connect = board.connectLength();
+        cells = numOfSlots * slotHeight;
+        int slotBits = slotHeight + 1;
+        long column = (1L << slotHeight) - 1;
+        bottomMask = 0;
+        slotMasks = new long[numOfSlots];
+        for (int i = 0; i < numOfSlots; i++) {
+            bottomMask |= 1L << (i * slotBits);
+            // n/2, n/2 - 1, n/2 + 1, n/2 - 2, ...
+            int slot = numOfSlots / 2
+                    + (i % 2 == 0 ? i / 2 : -(i + 1) / 2);
+            slotMasks[i] = column << (slot * slotBits);
+        }
+        boardMask = bottomMask * column;
+        moves = new long[cells + 1][numOfSlots];
+        moveScores = new int[cells + 1][numOfSlots];
+    }
+
+    /** Return the slot index of the given bitboard of a slot. */
+    private int slotOf(long bits) {
+        return Long.numberOfTrailingZeros(bits) / (slotHeight + 1);
+    }
+
+    /**
+     * Return the score of the given position of the given number of
+     * checkers, narrowing the range of possible scores by null-window
+     * searches; weak if only its sign is wanted.
+     */
+    private int solve(long current, long mask, int n, boolean weak) {
+        if (n == cells) {
+            return 0;
+        }
+        if ((winning(current, mask) & possible(mask)) != 0) {
+            return (cells + 1 - n) / 2;
+        }
+        int min = weak ? -1 : -(cells - n) / 2;
+        int max = weak ? 1 : (cells + 1 - n) / 2;
+        while (min < max) {
+            int med = min + (max - min) / 2;
+            // probe near 0 first, where most positions are
+            if (med <= 0 && min / 2 < med) {
+                med = min / 2;
+            } else if (med >= 0 && max / 2 > med) {
+                med = max / 2;
+            }
+            int r = negamax(current, mask, n, med, med + 1);
+            if (r <= med) {
+                max = r;
+            } else {
+                min = r;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Return the score of the given position of the given number of
+     * checkers, exact if strictly between alpha and beta and a bound
+     * otherwise; the side to move may be able to win at once.
+     */
+    private int solve(long current, long mask, int n, int alpha, int beta) {
+        if (n == cells) {
+            return 0;
+        }
+        if ((winning(current, mask) & possible(mask)) != 0) {
+            return (cells + 1 - n) / 2;
+        }
+        return negamax(current, mask, n, alpha, beta);
+    }
+
+    /**
+     * Return the score of the given position of the given number of
+     * checkers, exact if strictly between alpha and beta and a bound
+     * otherwise. The side to move must not be able to win at once.
+     */
+    private int negamax(long current, long mask, int n, int alpha, int beta) {
+        nodes++;
+        long next = nonLosingMoves(current, mask);
+        if (next == 0) {
+            return -(cells - n) / 2;
+        }
+        if (n >= cells - 2) {
+            return 0;
+        }
+        int min = -(cells - 2 - n) / 2; // the opponent can't win at once
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta) {
+                return alpha;
+            }
+        }
+        int max = (cells - 1 - n) / 2; // nor can the side to move
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta) {
+                return beta;
+            }
+        }
+
+        long key = current + mask;
+        key = Math.min(key, Board.mirror(key, numOfSlots, slotHeight));
+        if (boardDatabase != null && cells - n <= boardDatabase.maxEmpty()) {
+            int score = boardDatabase.score(key);
+            if (score != EndgameDatabase.NOT_FOUND) {
+                return score;
+            }
+        }
+        long hash = hash(key);
+        long entry = table.probe(hash);
+        if (entry != TranspositionTable.MISS) {
+            int score = TranspositionTable.score(entry);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT) {
+                return score;
+            } else if (bound == TranspositionTable.LOWER) {
+                if (score >= beta) {
+                    return score;
+                }
+                alpha = Math.max(alpha, score);
+            } else {
+                if (score <= alpha) {
+                    return score;
+                }
+                beta = Math.min(beta, score);
+            }
+        }
+
+        long[] moves = this.moves[n];
+        int[] scores = moveScores[n];
+        int count = 0;
+        for (long slot: slotMasks) {
+            long move = next & slot;
+            if (move != 0) {
+                // insertion sort by the number of threats created;
+                // stable, so ties stay center-first
+                int score = Long.bitCount(winning(current | move, mask | move));
+                int i = count++;
+                for (; i > 0 && scores[i - 1] < score; i--) {
+                    moves[i] = moves[i - 1];
+                    scores[i] = scores[i - 1];
+                }
+                moves[i] = move;
+                scores[i] = score;
+            }
+        }
+
+        int alpha0 = alpha;
+        int empty = cells - n;
+        for (int i = 0; i < count; i++) {
+            long move = moves[i];
+            int score = -negamax(current ^ mask, mask | move, n + 1,
+                    -beta, -alpha);
+            if (score >= beta) {
+                table.store(hash, empty, score, TranspositionTable.LOWER,
+                        TranspositionTable.NO_MOVE);
+                return score;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+        }
+        table.store(hash, empty, alpha, alpha > alpha0
+                ? TranspositionTable.EXACT : TranspositionTable.UPPER,
+                TranspositionTable.NO_MOVE);
+        return alpha;
+    }
+
+    /**
+     * Return the bitboard of the moves of the side to move that don't
+     * let the opponent win at once; 0 if there is no such move.
+     */
+    private long nonLosingMoves(long current, long mask) {
+        long possible = possible(mask);
+        long threats = winning(current ^ mask, mask);
+        long forced = possible & threats;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0) {
+                return 0; // two threats can't both be blocked
+            }
+            possible = forced;
+        }
+        return possible & ~(threats >>> 1); // don't play below a threat
+    }
+
+    /** Return the bitboard of the places where a checker can be dropped. */
+    private long possible(long mask) {
+        return (mask + bottomMask) & boardMask;
+    }
+
+    /**
+     * Return the bitboard of the empty places that would complete
+     * a winning row for the given checkers.
+     */
+    private long winning(long stones, long mask) {
+        return Board.threats(stones, slotHeight, connect) & (boardMask ^ mask);
+    }
+
+    /** Return a well-mixed table hash of the given position key. */
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Return the distance in plies to the end of the game of the given
+     * score of a position of the given number of checkers.
+     */
+    private int distance(int score, int n) {
+        if (score == 0) {
+            return cells - n;
+        }
+        // the winning checker is the p-th one, where
+        // (cells + 2 - p) / 2 = |score| and p is of the winner's parity
+        int p = cells + 2 - 2 * Math.abs(score);
+        int parity = score > 0 ? n + 1 : n;
+        if ((p - parity) % 2 != 0) {
+            p--;
+        }
+        return p - n;
+    }
+
+    /** Result of a position for the side to move with perfect play. */
+    public static class Result {
+
+        /** Score of the position; only its sign is meaningful if weak. */
+        private final int score;
+
+        /** Number of plies to the end of the game; -1 if unknown. */
+        private final int distance;
+
+        /** Create a new result of the given score and distance. */
+        private Result(int score, int distance) {
+            this.score = score;
+            this.distance = distance;
+        }
+
+        /** Return the outcome of the game for the side to move. */
+        public Outcome outcome() {
+            return score > 0 ? Outcome.WIN
+                    : (score < 0 ? Outcome.LOSS : Outcome.DRAW);
+        }
+
+        /** Return the score of the position; only its sign if weak. */
+        public int score() {
+            return score;
+        }
+
+        /**
+         * Return the number of plies to the end of the game, including
+         * the winning checker; -1 if this is a weak result.
+         */
+        public int distance() {
+            return distance;
+        }
+
+        /** Is this a weak result, telling only the outcome? */
+        public boolean isWeak() {
+            return distance < 0;
+        }
+
+        @Override
+        public String toString() {
+            String s = outcome().name().toLowerCase();
+            return isWeak() ? s : s + " in " + distance;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Solver solver = new Solver(new TranspositionTable(256));
+        if (args.length > 0) {
+            solver.setEndgameDatabase(new EndgameDatabase(Paths.get(args[0])));
+        }
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            Board board = new Board();
+            try {
+                board.play(line);
+            } catch (IllegalArgumentException e) {
+                System.out.println(line + " invalid");
+                continue;
+            }
+            solver.reset();
+            long start = System.nanoTime();
+            Result result = solver.solve(board);
+            long micros = (System.nanoTime() - start) / 1000;
+            System.out.printf("%s %s %d %d %d%n", line, result,
+                    result.score(), solver.nodes(), micros);
+        }
+    }
+}
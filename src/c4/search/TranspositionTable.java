@@ -0,0 +1,140 @@
+package c4.search;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size transposition table caching search results by the 
+ * hash of a position, such as {@link c4.model.Board#hash()}. 
+ * Each entry is packed into a single <code>long</code> of a 
+ * preallocated array, so the table takes a bounded amount of memory
+ * and probing or storing never allocates. An entry consists of 
+ * the upper 32 bits of the hash (used to verify a hit), 
+ * a 16-bit score, an 8-bit depth, a 4-bit best move and a 2-bit
+ * bound type.
+ * The slot of an entry is given by the lower bits of the hash.
+ */
+public class TranspositionTable {
+
+    /** Policy deciding whether a store may overwrite an entry. */
+    public enum Replacement {
+        /** Always overwrite the existing entry. */
+        ALWAYS,
+        
+        /** Overwrite an entry of another position only if the new
+         * entry was searched at least as deep. */
+        DEPTH_PREFERRED
+    }
+
+    /** Bound type of an exact score. */
+    public static final int EXACT = 1;
+
+    /** Bound type of a score that is a lower bound (fail high). */
+    public static final int LOWER = 2;
+
+    /** Bound type of a score that is an upper bound (fail low). */
+    public static final int UPPER = 3;
+
+    /** Move stored in an entry without a best move. */
+    public static final int NO_MOVE = 15;
+
+    /** Returned by {@link #probe(long)} if the position is not found. */
+    public static final long MISS = 0;
+
+    /** Bytes per megabyte. */
+    private static final long MB = 1L << 20;
+
+    /** Entries of this table; 0 denotes an empty entry. */
+    private final long[] entries;
+
+    /** Mask to obtain an entry index from a hash. */
+    private final int indexMask;
+
+    /** Replacement policy of this table. */
+    private final Replacement replacement;
+
+    /** Create a new depth-preferred table of the given size in MB. */
+    public TranspositionTable(int sizeInMb) {
+        this(sizeInMb, Replacement.DEPTH_PREFERRED);
+    }
+
+    /**
+     * Create a new table taking at most the given size in MB with
+     * the given replacement policy. The number of entries is the 
+     * largest power of two that fits in the size.
+     */
+    public TranspositionTable(int sizeInMb, Replacement replacement) {
+        if (sizeInMb < 1 || sizeInMb > 8192) {
+            throw new IllegalArgumentException(
+                    "Table size must be between 1 and 8192 MB: " + sizeInMb);
+        }
+        long n = Long.highestOneBit(sizeInMb * MB / Long.BYTES);
+        entries = new long[(int) Math.min(n, 1 << 30)];
+        indexMask = entries.length - 1;
+        this.replacement = replacement;
+    }
+
+    /** Return the number of entries of this table. */
+    public int capacity() {
+        return entries.length;
+    }
+
+    /** Remove all entries of this table. */
+    public void clear() {
+        Arrays.fill(entries, 0);
+    }
+
+    /**
+     * Return the packed entry of the position of the given hash;
+     * {@link #MISS} if not found. Use the static accessor methods 
+     * to unpack the entry.
+     */
+    public long probe(long hash) {
+        long entry = entries[(int) hash & indexMask];
+        return entry != 0 && (int) (entry >>> 32) == (int) (hash >>> 32)
+                ? entry : MISS;
+    }
+
+    /**
+     * Store a search result of the position of the given hash,
+     * subject to the replacement policy of this table.
+     *
+     * @param depth searched depth in plies, between 0 and 255
+     * @param score score, between -32768 and 32767
+     * @param bound bound type; one of EXACT, LOWER and UPPER
+     * @param move 0-based slot index of the best move or NO_MOVE
+     */
+    public void store(long hash, int depth, int score, int bound, int move) {
+        int i = (int) hash & indexMask;
+        long old = entries[i];
+        if (replacement == Replacement.DEPTH_PREFERRED && old != 0
+                && (int) (old >>> 32) != (int) (hash >>> 32)
+                && depth(old) > depth) {
+            return;
+        }
+        entries[i] = (hash & 0xFFFFFFFF00000000L)
+                | (score & 0xFFFFL) << 16
+                | (depth & 0xFFL) << 8
+                | (move & 0xFL) << 2
+                | (bound & 0x3L);
+    }
+
+    /** Return the score of the given entry. */
+    public static int score(long entry) {
+        return (short) (entry >>> 16);
+    }
+
+    /** Return the searched depth of the given entry. */
+    public static int depth(long entry) {
+        return (int) (entry >>> 8) & 0xFF;
+    }
+
+    /** Return the best move of the given entry; NO_MOVE if none. */
+    public static int move(long entry) {
+        return (int) (entry >>> 2) & 0xF;
+    }
+
+    /** Return the bound type of the given entry. */
+    public static int bound(long entry) {
+        return (int) entry & 0x3;
+    }
+}
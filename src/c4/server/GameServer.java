@@ -0,0 +1,495 @@
+package c4.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import c4.engine.Game;
+import c4.model.Board;
+import c4.model.Player;
+import c4.search.AlphaBeta;
+import c4.search.TranspositionTable;
+
+/**
+ * A TCP server of Connect Four games against a computer player,
+ * speaking the binary {@link Protocol}. Thousands of connections are
+ * served by a single I/O thread multiplexing non-blocking channels,
+ * each connection being a session holding its game. The moves of
+ * the computer player are searched by {@link AlphaBeta} on a fixed
+ * pool of threads, each keeping its own transposition table, and
+ * handed back to the I/O thread when found; no matter how long the
+ * searches take, the I/O thread never waits for them and keeps
+ * accepting and answering the other sessions. A session has at most
+ * one search queued or running, and the queue of the pool is bounded;
+ * a search that doesn't fit is refused with a BUSY error.
+ *
+ * Usage: <code>GameServer [-port n] [-threads n] [-depth plies]</code>,
+ * where the threads are those searching moves and the depth is the
+ * largest search depth a client may ask for.
+ *
+ * @see LoadTest
+ */
+public class GameServer implements Closeable {
+
+    /** Default port of a server. */
+    public static final int DEFAULT_PORT = 4444;
+
+    /** Default largest search depth in plies. */
+    public static final int DEFAULT_MAX_DEPTH = 8;
+
+    /** Size of the transposition table of each search thread in MB. */
+    private static final int TABLE_SIZE = 4;
+
+    /** Size of the output buffer of a session in bytes. */
+    private static final int OUTPUT_SIZE = 256;
+
+    /** Largest number of searches waiting for a thread of the pool. */
+    private static final int MAX_QUEUED_SEARCHES = 8192;
+
+    /** Channel accepting connections. */
+    private final ServerSocketChannel server;
+
+    /** Selector of the channels ready for I/O. */
+    private final Selector selector;
+
+    /** Threads searching moves. */
+    private final ExecutorService pool;
+
+    /** Searchers of the threads; each used by one thread at a time. */
+    private final ThreadLocal<AlphaBeta> searchers = ThreadLocal.withInitial(
+            () -> new AlphaBeta(new TranspositionTable(TABLE_SIZE)));
+
+    /** Moves found by the search threads, to be sent by the I/O thread. */
+    private final ConcurrentLinkedQueue<Runnable> found =
+            new ConcurrentLinkedQueue<>();
+
+    /** Largest search depth a client may ask for. */
+    private final int maxDepth;
+
+    /** Thread serving the channels. */
+    private final Thread ioThread;
+
+    /** Has this server been closed? */
+    private volatile boolean closed;
+
+    /** Number of sessions open and of games finished; written by the
+     * I/O thread only. */
+    private volatile int numOfSessions;
+    private volatile long numOfGames;
+
+    /**
+     * Create a new server listening on the given port, 0 for any free
+     * one, searching moves on the given number of threads up to the
+     * given depth. The server is started by {@link #start()}.
+     */
+    public GameServer(int port, int threads, int maxDepth)
+            throws IOException {
+        if (threads < 1 || maxDepth < 1) {
+            throw new IllegalArgumentException("Invalid threads or depth: "
+                    + threads + ", " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        pool = new ThreadPoolExecutor(threads, threads, 0, 
+                TimeUnit.MILLISECONDS, 
+                new ArrayBlockingQueue<>(MAX_QUEUED_SEARCHES), r -> {
+                    Thread t = new Thread(r, "server-search");
+                    t.setDaemon(true);
+                    return t;
+                });
+        ioThread = new Thread(this::serve, "server-io");
+    }
+
+    /** Return the port on which this server listens. */
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    /** Return the number of sessions open. */
+    public int numOfSessions() {
+        return numOfSessions;
+    }
+
+    /** Return the number of games finished. */
+    public long numOfGames() {
+        return numOfGames;
+    }
+
+    /** Start serving connections. */
+    public void start() {
+        ioThread.start();
+    }
+
+    /** Stop serving and close all connections. */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            ioThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.shutdownNow();
+    }
+
+    /** Serve the channels until closed. */
+    private void serve() {
+        try {
+            while (!closed) {
+                selector.select();
+                Runnable r;
+                while ((r = found.poll()) != null) {
+                    r.run(); // each closes its session if failing
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Session s = (Session) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                s.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                s.write();
+                            }
+                        } catch (IOException e) {
+                            s.close();
+                        } catch (RuntimeException e) {
+                            s.fail(e);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Server stopped: " + e);
+        } finally {
+            for (SelectionKey key: selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    /** Accept the pending connections. */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Session s = new Session(channel);
+            s.key = channel.register(selector, SelectionKey.OP_READ, s);
+            numOfSessions++;
+        }
+    }
+
+    /** A connection and its game; used by the I/O thread only. */
+    private class Session {
+
+        /** Channel of the connection. */
+        private final SocketChannel channel;
+
+        /** Key of the channel. */
+        private SelectionKey key;
+
+        /** Bytes received but not handled yet. */
+        private final ByteBuffer in =
+                ByteBuffer.allocate(Protocol.MAX_MESSAGE_SIZE * 16);
+
+        /** Bytes to send. */
+        private final ByteBuffer out = ByteBuffer.allocate(OUTPUT_SIZE);
+
+        /** Players of the client and the server. */
+        private final Player client = new Player("client");
+        private final Player computer = new Player("server");
+
+        /** Game in progress or last played; null if none. */
+        private Game game;
+
+        /** Search depth of the computer player. */
+        private int depth;
+
+        /** Is the current game waiting for a move of the computer 
+         * player? */
+        private boolean searching;
+
+        /** Is a search of this session, maybe of an abandoned game, 
+         * queued or running on the pool? */
+        private boolean inFlight;
+
+        /** Number of the current game, telling stale moves apart. */
+        private int gameNumber;
+
+        /** Has the connection been closed? */
+        private boolean closed;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /** Read and handle the messages received. */
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            while (in.hasRemaining() && !closed) {
+                byte type = in.get(in.position());
+                int size = Protocol.payloadSize(type);
+                if (size < 0) {
+                    close(); // not speaking the protocol
+                    return;
+                }
+                if (in.remaining() < 1 + size) {
+                    break;
+                }
+                in.get();
+                if (type == Protocol.NEW_GAME) {
+                    newGame(in.get() & 0xFF, in.get() & 0xFF,
+                            in.get() & 0xFF, in.get() & 0xFF, in.get() == 0);
+                } else if (type == Protocol.MOVE) {
+                    clientMoved(in.get() & 0xFF);
+                } else {
+                    close();
+                    return;
+                }
+            }
+            in.compact();
+            write();
+        }
+
+        /** Start a new game of the given parameters. */
+        private void newGame(int numOfSlots, int slotHeight, int connect,
+                int depth, boolean clientFirst) {
+            Board board;
+            try {
+                board = new Board(numOfSlots, slotHeight, connect);
+            } catch (IllegalArgumentException e) {
+                send(Protocol.ERROR, Protocol.INVALID_BOARD);
+                return;
+            }
+            gameNumber++;
+            searching = false;
+            this.depth = Math.max(1, Math.min(depth, maxDepth));
+            game = clientFirst ? new Game(board, client, computer)
+                    : new Game(board, computer, client);
+            if (!clientFirst) {
+                search();
+            }
+        }
+
+        /** Play the given move of the client and answer it. */
+        private void clientMoved(int slot) {
+            if (game == null || game.isOver()) {
+                send(Protocol.ERROR, Protocol.NO_GAME);
+            } else if (searching) {
+                send(Protocol.ERROR, Protocol.NOT_YOUR_TURN);
+            } else if (slot >= game.board().numOfSlots()
+                    || !game.board().isSlotOpen(slot)) {
+                send(Protocol.ERROR, Protocol.INVALID_MOVE);
+            } else {
+                game.play(slot);
+                if (!checkOver()) {
+                    search();
+                }
+            }
+        }
+
+        /** Search the move of the computer player on the pool, once the
+         * search in flight, if any, has reported back. */
+        private void search() {
+            searching = true;
+            if (!inFlight) {
+                submit();
+            }
+        }
+
+        /** Submit the search of the move of the computer player in the
+         * current game to the pool, abandoning the game if the pool is 
+         * too busy. */
+        private void submit() {
+            Board board = new Board(game.board());
+            int number = gameNumber;
+            int depth = this.depth;
+            try {
+                pool.execute(() -> {
+                    Runnable answer;
+                    try {
+                        AlphaBeta searcher = searchers.get();
+                        searcher.reset();
+                        int slot = searcher.bestMove(board, depth);
+                        answer = () -> computerMoved(number, slot);
+                    } catch (RuntimeException | Error e) {
+                        answer = () -> fail(e);
+                    }
+                    found.add(answer);
+                    selector.wakeup();
+                });
+                inFlight = true;
+            } catch (RejectedExecutionException e) {
+                searching = false;
+                game = null;
+                send(Protocol.ERROR, Protocol.BUSY);
+            }
+        }
+
+        /** Play and send the given move of the computer player found
+         * for the game of the given number. If the game was abandoned,
+         * the move of the current game is searched instead if needed. */
+        private void computerMoved(int number, int slot) {
+            inFlight = false;
+            if (closed) {
+                return;
+            }
+            try {
+                if (number != gameNumber) {
+                    if (searching) {
+                        submit();
+                    }
+                } else {
+                    searching = false;
+                    game.play(slot);
+                    send(Protocol.MOVE, slot);
+                    checkOver();
+                }
+                write();
+            } catch (IOException e) {
+                close();
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /** Report the given failure of this session and close it,
+         * leaving the other sessions served. */
+        void fail(Throwable e) {
+            if (!closed) {
+                System.err.println("Session failed: " + e);
+                close();
+            }
+        }
+
+        /** If the game is over, tell the client; return true if so. */
+        private boolean checkOver() {
+            if (!game.isOver()) {
+                return false;
+            }
+            send(Protocol.OVER, game.winner() == null ? Protocol.DRAW
+                    : (game.winner() == client ? Protocol.CLIENT_WINS
+                            : Protocol.SERVER_WINS));
+            numOfGames++;
+            return true;
+        }
+
+        /** Queue the given message of a single-byte payload. */
+        private void send(byte type, int payload) {
+            if (out.remaining() < 2) {
+                close(); // not reading the answers
+                return;
+            }
+            out.put(type).put((byte) payload);
+        }
+
+        /** Write out the queued bytes, waiting to write the rest, if
+         * any, until the channel is ready. */
+        void write() throws IOException {
+            if (closed) {
+                return;
+            }
+            out.flip();
+            channel.write(out);
+            boolean pending = out.hasRemaining();
+            out.compact();
+            key.interestOps(pending
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                    : SelectionKey.OP_READ);
+        }
+
+        /** Close the connection, abandoning the game. */
+        void close() {
+            if (!closed) {
+                closed = true;
+                numOfSessions--;
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int depth = DEFAULT_MAX_DEPTH;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                case "-port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Usage: GameServer "
+                            + "[-port n] [-threads n] [-depth plies]");
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        GameServer server = new GameServer(port, threads, depth);
+        server.start();
+        System.err.printf("Serving on port %d with %d search threads%n",
+                server.port(), threads);
+        while (true) {
+            try {
+                TimeUnit.SECONDS.sleep(10);
+            } catch (InterruptedException e) {
+                break;
+            }
+            System.err.printf("%d sessions, %d games%n",
+                    server.numOfSessions(), server.numOfGames());
+        }
+    }
+}
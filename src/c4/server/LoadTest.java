@@ -0,0 +1,316 @@
+package c4.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Random;
+
+import c4.model.Board;
+
+/**
+ * A load generator for a {@link GameServer}. A number of clients, all
+ * served by a single thread multiplexing their connections, play games
+ * continuously against the server, choosing their moves at random.
+ * The time from sending a message to receiving the server's answer,
+ * i.e., the latency of a move, is measured for every move after a
+ * warm-up, and its percentiles are reported along with the number of
+ * games finished per second and per core of the server.
+ *
+ * Usage: <code>LoadTest [-host name] [-port n] [-clients n]
+ * [-seconds n] [-warmup n] [-depth plies] [-threads n]</code>. Unless
+ * a host is given, a server is started in this process on a free port
+ * with the given number of search threads, all processors by default.
+ */
+public class LoadTest {
+
+    /** Width of a latency bucket in microseconds. */
+    private static final int BUCKET_MICROS = 10;
+
+    /** Number of latency buckets; the last one holds longer latencies. */
+    private static final int NUM_OF_BUCKETS = 100_000;
+
+    /** Numbers of moves answered, by latency. */
+    private final long[] latencies = new long[NUM_OF_BUCKETS];
+
+    /** Largest latency measured in nanoseconds. */
+    private long maxLatency;
+
+    /** Number of games finished during the measurement. */
+    private long numOfGames;
+
+    /** Number of games abandoned by the server as too busy. */
+    private long numOfBusy;
+
+    /** Is the warm-up over? */
+    private boolean measuring;
+
+    /** Search depth asked of the server. */
+    private final int depth;
+
+    /** Create a new load test asking the server to search the given
+     * number of plies. */
+    private LoadTest(int depth) {
+        this.depth = depth;
+    }
+
+    /** A connection playing games against the server. */
+    private class Client {
+
+        /** Channel of the connection. */
+        private final SocketChannel channel;
+
+        /** Answers received but not handled yet. */
+        private final ByteBuffer in = ByteBuffer.allocate(64);
+
+        /** Messages to send; a new game and a move at most. */
+        private final ByteBuffer out = ByteBuffer.allocate(
+                2 * Protocol.MAX_MESSAGE_SIZE);
+
+        /** Board of the current game, mirroring that of the server. */
+        private final Board board = new Board();
+
+        /** Source of the moves. */
+        private final Random random;
+
+        /** Does the client move first in the current game? */
+        private boolean first;
+
+        /** Has the current game ended, the server yet to tell so? */
+        private boolean ended;
+
+        /** System.nanoTime() when the last message was sent; 0 if it
+         * has been answered. */
+        private long sent;
+
+        Client(SocketChannel channel, long seed) {
+            this.channel = channel;
+            random = new Random(seed);
+        }
+
+        /** Start a new game, with the first move alternating. */
+        void newGame() throws IOException {
+            first = !first;
+            ended = false;
+            board.clear();
+            out.put(Protocol.NEW_GAME).put((byte) board.numOfSlots())
+                    .put((byte) board.slotHeight())
+                    .put((byte) board.connectLength()).put((byte) depth)
+                    .put((byte) (first ? 0 : 1));
+            if (first) {
+                move();
+            } else {
+                send();
+            }
+        }
+
+        /** Send a random move. */
+        private void move() throws IOException {
+            int slot;
+            do {
+                slot = random.nextInt(board.numOfSlots());
+            } while (!board.isSlotOpen(slot));
+            play(slot);
+            out.put(Protocol.MOVE).put((byte) slot);
+            send();
+        }
+
+        /** Play the given move on the board, noting the end of the game. */
+        private void play(int slot) {
+            ended |= board.isWinningMove(slot);
+            board.play(slot);
+            ended |= board.isFull();
+        }
+
+        /** Send the queued message; it fits in the socket buffer. */
+        private void send() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+            sent = System.nanoTime();
+        }
+
+        /** Read and handle the answers received. */
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                throw new IOException("Connection closed by the server");
+            }
+            in.flip();
+            boolean over = false;
+            boolean abandoned = false;
+            while (in.remaining() >= 2) {
+                byte type = in.get();
+                int payload = in.get() & 0xFF;
+                if (sent != 0) {
+                    record(System.nanoTime() - sent);
+                    sent = 0;
+                }
+                if (type == Protocol.MOVE) {
+                    play(payload);
+                } else if (type == Protocol.OVER) {
+                    over = true;
+                } else if (payload == Protocol.BUSY) {
+                    numOfBusy++;
+                    over = abandoned = true;
+                } else {
+                    throw new IOException("Error " + payload);
+                }
+            }
+            in.compact();
+            if (over) {
+                if (measuring && !abandoned) {
+                    numOfGames++;
+                }
+                newGame();
+            } else if (sent == 0 && !ended) {
+                move();
+            }
+        }
+    }
+
+    /** Record the given latency in nanoseconds. */
+    private void record(long nanos) {
+        if (measuring) {
+            int i = (int) Math.min(nanos / 1000 / BUCKET_MICROS,
+                    NUM_OF_BUCKETS - 1);
+            latencies[i]++;
+            maxLatency = Math.max(maxLatency, nanos);
+        }
+    }
+
+    /** Return the given fraction of the latencies measured in ms. */
+    private double percentile(double fraction) {
+        long total = 0;
+        for (long n: latencies) {
+            total += n;
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        long n = 0;
+        for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+            n += latencies[i];
+            if (n >= rank) {
+                return (i + 1) * BUCKET_MICROS / 1000.0;
+            }
+        }
+        return maxLatency / 1e6;
+    }
+
+    /**
+     * Play games on the given number of connections to the given server
+     * for the given warm-up and measurement times in seconds.
+     */
+    private void run(InetSocketAddress address, int clients, int warmup,
+            int seconds) throws IOException {
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < clients; i++) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.configureBlocking(false);
+                Client c = new Client(channel, i);
+                channel.register(selector, SelectionKey.OP_READ, c);
+                c.newGame();
+            }
+            long start = System.nanoTime();
+            long measureStart = start + warmup * 1_000_000_000L;
+            long end = measureStart + seconds * 1_000_000_000L;
+            long now;
+            while ((now = System.nanoTime()) < end) {
+                measuring = now >= measureStart;
+                selector.select(100);
+                Iterator<SelectionKey> keys =
+                        selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ((Client) key.attachment()).read();
+                }
+            }
+            for (SelectionKey key: selector.keys()) {
+                key.channel().close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = null;
+        int port = GameServer.DEFAULT_PORT;
+        int clients = 1000;
+        int seconds = 10;
+        int warmup = 3;
+        int depth = 4;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                case "-host":
+                    host = args[++i];
+                    break;
+                case "-port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-clients":
+                    clients = Integer.parseInt(args[++i]);
+                    break;
+                case "-seconds":
+                    seconds = Integer.parseInt(args[++i]);
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Usage: LoadTest "
+                            + "[-host name] [-port n] [-clients n] "
+                            + "[-seconds n] [-warmup n] [-depth plies] "
+                            + "[-threads n]");
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        GameServer server = null;
+        if (host == null) {
+            server = new GameServer(0, threads, Math.max(depth, 1));
+            server.start();
+            host = "localhost";
+            port = server.port();
+        }
+        LoadTest test = new LoadTest(depth);
+        try {
+            test.run(new InetSocketAddress(host, port), clients, warmup,
+                    seconds);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+        double rate = test.numOfGames / (double) seconds;
+        System.out.printf("%d clients, depth %d: %d games in %d s, "
+                + "%.0f games/s", clients, depth, test.numOfGames, seconds,
+                rate);
+        if (server != null) {
+            System.out.printf(" (%.0f games/s per search thread)",
+                    rate / threads);
+        }
+        System.out.printf("%nmove latency: p50 %.2f ms, p99 %.2f ms, "
+                + "p99.9 %.2f ms, max %.2f ms%n", test.percentile(0.5),
+                test.percentile(0.99), test.percentile(0.999),
+                test.maxLatency / 1e6);
+        if (test.numOfBusy > 0) {
+            System.out.printf("%d games abandoned by a busy server%n",
+                    test.numOfBusy);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package c4.server;
+
+/**
+ * The binary wire protocol of a {@link GameServer}. A client plays
+ * games against a computer player of the server, one game at a time
+ * per connection. Each message is a type byte followed by a payload
+ * of a fixed size for its type, so messages need no length prefix.
+ *
+ * Client to server:
+ * <ul>
+ * <li><code>NEW_GAME slots height connect depth first</code>: start
+ *     a new game on a board of the given numbers of slots and places
+ *     in a slot, won by lining up the given number of checkers,
+ *     against a computer player searching the given number of plies
+ *     (capped by the server); the client moves first if
+ *     <code>first</code> is 0, the server otherwise. A game in
+ *     progress is abandoned.</li>
+ * <li><code>MOVE slot</code>: drop a checker of the client in the
+ *     given 0-based slot.</li>
+ * </ul>
+ *
+ * Server to client:
+ * <ul>
+ * <li><code>MOVE slot</code>: the server dropped a checker in the
+ *     given slot.</li>
+ * <li><code>OVER result</code>: the game is over, with one of the
+ *     results below, after the last move of either side.</li>
+ * <li><code>ERROR code</code>: the last message was rejected and
+ *     had no effect, or, if the code is <code>BUSY</code>, the server
+ *     was too busy to search its move and abandoned the game.</li>
+ * </ul>
+ *
+ * All fields are single unsigned bytes.
+ */
+public final class Protocol {
+
+    /** Type of a message starting a new game. */
+    public static final byte NEW_GAME = 1;
+
+    /** Type of a message of a move of either side. */
+    public static final byte MOVE = 2;
+
+    /** Type of a message telling the end of a game. */
+    public static final byte OVER = 3;
+
+    /** Type of a message rejecting the last message. */
+    public static final byte ERROR = 4;
+
+    /** Results of a game told by an OVER message. */
+    public static final byte DRAW = 0;
+    public static final byte CLIENT_WINS = 1;
+    public static final byte SERVER_WINS = 2;
+
+    /** Error codes told by an ERROR message. */
+    public static final byte NO_GAME = 1;
+    public static final byte NOT_YOUR_TURN = 2;
+    public static final byte INVALID_MOVE = 3;
+    public static final byte INVALID_BOARD = 4;
+    public static final byte BUSY = 5;
+
+    /** Largest size of a message in bytes. */
+    public static final int MAX_MESSAGE_SIZE = 6;
+
+    private Protocol() {
+    }
+
+    /**
+     * Return the size of the payload of a message of the given type
+     * in bytes; -1 if there is no such type.
+     */
+    public static int payloadSize(byte type) {
+        switch (type) {
+        case NEW_GAME:
+            return 5;
+        case MOVE:
+        case OVER:
+        case ERROR:
+            return 1;
+        default:
+            return -1;
+        }
+    }
+}